@@ -0,0 +1,24 @@
+#!/bin/sh
+# Builds an AppCDS archive (build/texttool.jsa) holding every class a typical
+# run loads, so later runs map them in instead of parsing and verifying them.
+#   java -XX:SharedArchiveFile=build/texttool.jsa -jar build/texttool.jar ...
+set -e
+cd "$(dirname "$0")/.."
+
+[ -f build/texttool.jar ] || scripts/build.sh
+
+# Only classes loaded by the archiving run are archived, so that one run goes
+# through as much as it can: a job file with every built-in operation, a
+# filter, -d, -s and -u
+sample=$(mktemp)
+job=$(mktemp)
+printf 'alphanumeric_aBc123_AbC123_foobar!\n' > "$sample"
+cat > "$job" <<'JOB'
+replace -i abc xyz
+regex "([a-z]+)_" "$1-"
+prefix "#"
+encode 3
+JOB
+java -XX:ArchiveClassesAtExit=build/texttool.jsa -Xshare:auto -jar build/texttool.jar \
+	--job "$job" --exclude zzz -d 1 -s -u "$sample" > /dev/null
+rm -f "$sample" "$job"
@@ -0,0 +1,8 @@
+#!/bin/sh
+# Builds a GraalVM native executable (build/texttool). Options come from
+# src/META-INF/native-image/edu.gatech.seclass/texttool/native-image.properties.
+set -e
+cd "$(dirname "$0")/.."
+
+[ -f build/texttool.jar ] || scripts/build.sh
+native-image -jar build/texttool.jar -o build/texttool
@@ -0,0 +1,58 @@
+#!/bin/sh
+# Measures time-to-first-output for a 1 KB input across the plain JVM, the
+# AppCDS archive and the native executable, whichever have been built.
+# The plain JVM is only the baseline; the script exits 0 when the AppCDS or
+# native build meets the target, and 1 when neither is built or fast enough.
+#   scripts/startup-bench.sh [runs]
+set -e
+cd "$(dirname "$0")/.."
+
+runs=${1:-20}
+TARGET_MS=50
+input=$(mktemp)
+i=0
+while [ $i -lt 32 ]; do
+	printf 'alphanumeric_aBc123_AbC123_foobar!\n' >> "$input"
+	i=$((i + 1))
+done
+
+# Prints the median milliseconds until the first byte of output arrives. The
+# time is taken as soon as head has the byte, not when the pipeline ends,
+# which would also count the JVM's shutdown
+measure() {
+	n=0
+	while [ $n -lt "$runs" ]; do
+		start=$(date +%s%N)
+		first=$("$@" -p '#' "$input" | { head -c 1 > /dev/null; date +%s%N; })
+		echo $(((first - start) / 1000000))
+		n=$((n + 1))
+	done | sort -n | awk '{ t[NR] = $1 } END { print t[int((NR + 1) / 2)] }'
+}
+
+met=1
+# Prints the median for one fast-start build, warning when it is over the target
+report() {
+	name=$1
+	shift
+	ms=$(measure "$@")
+	printf '%-8s%s ms\n' "$name:" "$ms"
+	if [ "$ms" -gt "$TARGET_MS" ]; then
+		echo "warning: $name median ${ms} ms is over the ${TARGET_MS} ms target" >&2
+	else
+		met=0
+	fi
+}
+
+[ -f build/texttool.jar ] || scripts/build.sh
+printf '%-8s%s ms (baseline)\n' "jvm:" "$(measure java -XX:TieredStopAtLevel=1 -XX:+UseSerialGC -Xshare:auto -jar build/texttool.jar)"
+if [ -f build/texttool.jsa ]; then
+	report appcds java -XX:TieredStopAtLevel=1 -XX:+UseSerialGC -XX:SharedArchiveFile=build/texttool.jsa -jar build/texttool.jar
+fi
+if [ -x build/texttool ]; then
+	report native build/texttool
+fi
+if [ ! -f build/texttool.jsa ] && [ ! -x build/texttool ]; then
+	echo "warning: no AppCDS archive or native executable to hold to the target; run scripts/build-cds.sh" >&2
+fi
+rm -f "$input"
+exit $met
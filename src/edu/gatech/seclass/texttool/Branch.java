@@ -0,0 +1,112 @@
+package edu.gatech.seclass.texttool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Everything a line goes through after the shared read and filters: the
+ * transform chain, -u, -s, and finally the sink, usually the writer of one
+ * output. A run has a branch per output, so several outputs cost one read of
+ * the input; with more than one, each runs on a thread of its own through
+ * {@link FanOut}.
+ */
+final class Branch implements LineSink, Closeable {
+	private final TransformChain chain;
+	private final Deduplicator deduplicator;
+	private final ExternalSorter sorter;
+	private LineSink sink;
+	private LineWriter writer;
+	private WritableByteChannel channel;
+	private boolean ownsChannel;
+	private Path outFile;
+	private boolean finished;
+
+	//deduplicator and sorter may be null
+	Branch(TransformChain chain, Deduplicator deduplicator, ExternalSorter sorter){
+		this.chain = chain;
+		this.deduplicator = deduplicator;
+		this.sorter = sorter;
+	}
+
+	/**
+	 * Writes the branch's lines to channel, which is closed when done if owned,
+	 * and outFile, if not null, deleted should the run fail.
+	 */
+	void writeTo(WritableByteChannel channel, boolean ownsChannel, Path outFile, Charset charset, LineEnding ending, long copies){
+		this.channel = channel;
+		this.ownsChannel = ownsChannel;
+		this.outFile = outFile;
+		this.writer = new LineWriter(channel, charset);
+		this.sink = new WriterSink(writer, ending, copies);
+	}
+
+	/**
+	 * Hands the branch's lines to sink instead of writing them.
+	 */
+	void sendTo(LineSink sink){
+		this.sink = sink;
+	}
+
+	WritableByteChannel channel(){
+		return channel;
+	}
+
+	@Override
+	public void accept(CharSequence line, int terminator) throws IOException {
+		line = chain.apply(line);
+		if(deduplicator != null && !deduplicator.add(line)){
+			return;
+		}
+		if(sorter != null){
+			//Once sorted, an unterminated last line may no longer be last
+			sorter.add(line, terminator == 0 ? 1 : terminator);
+		}
+		else {
+			sink.accept(line, terminator);
+		}
+	}
+
+	/**
+	 * Emits anything held back for sorting and completes the output.
+	 */
+	void finish() throws IOException {
+		if(sorter != null){
+			sorter.finish(sink);
+		}
+		if(writer != null){
+			writer.flush();
+			writer.release();
+			if(ownsChannel){
+				channel.close();
+			}
+		}
+		finished = true;
+	}
+
+	/**
+	 * Releases everything, deleting the output file unless finished.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			if(ownsChannel){
+				channel.close();
+			}
+			if(!finished && outFile != null){
+				Files.deleteIfExists(outFile);
+			}
+		}
+		finally {
+			if(deduplicator != null){
+				deduplicator.close();
+			}
+			if(sorter != null){
+				sorter.close();
+			}
+		}
+	}
+}
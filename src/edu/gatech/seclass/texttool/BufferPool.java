@@ -0,0 +1,221 @@
+package edu.gatech.seclass.texttool;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recycles the large buffers the pipeline works in: heap byte buffers for
+ * reading and writing, char buffers for decoded lines, and direct byte
+ * buffers for {@link LineStore} blocks. Parallel and sorted runs create
+ * readers, writers and stores over and over, and without a pool each of
+ * them would allocate and drop its buffers again.
+ *
+ * Buffers come in power-of-two size classes from 256 bytes (or chars) to
+ * 16 MB; larger requests are allocated outright and never pooled. A released
+ * buffer goes to a small cache of the releasing thread, and once that is
+ * full to a bounded pool shared by all threads, which is where buffers
+ * handed from one thread to another (worker to writer) meet again. A buffer
+ * that is never released is simply garbage collected.
+ */
+final class BufferPool {
+	private static final int MIN_SHIFT = 8;
+	private static final int MAX_SHIFT = 24;
+	private static final int CLASSES = MAX_SHIFT - MIN_SHIFT + 1;
+	//Per thread and class, then shared per class
+	private static final int LOCAL_LIMIT = 4;
+	private static final int SHARED_LIMIT = 32;
+
+	private static final int HEAP = 0;
+	private static final int DIRECT = 1;
+	private static final int CHARS = 2;
+
+	private static final ThreadLocal<Cache> LOCAL = new ThreadLocal<Cache>() {
+		@Override
+		protected Cache initialValue(){
+			return new Cache();
+		}
+	};
+	private static final Shared[][] SHARED = new Shared[3][CLASSES];
+
+	private static final LongAdder acquired = new LongAdder();
+	private static final LongAdder localHits = new LongAdder();
+	private static final LongAdder sharedHits = new LongAdder();
+	private static final AtomicLong outstanding = new AtomicLong();
+	private static final AtomicLong peakOutstanding = new AtomicLong();
+	private static long outstandingBefore;		//Held by whoever ran before the counts were reset
+
+	static {
+		for(int kind = 0; kind < 3; kind++){
+			for(int i = 0; i < CLASSES; i++){
+				SHARED[kind][i] = new Shared();
+			}
+		}
+	}
+
+	private BufferPool(){
+	}
+
+	/**
+	 * Returns a cleared heap byte buffer with at least size bytes remaining.
+	 */
+	static ByteBuffer bytes(int size){
+		return (ByteBuffer) acquire(HEAP, size);
+	}
+
+	/**
+	 * Returns a cleared direct byte buffer with at least size bytes remaining.
+	 */
+	static ByteBuffer direct(int size){
+		return (ByteBuffer) acquire(DIRECT, size);
+	}
+
+	/**
+	 * Returns a cleared, array backed char buffer with at least size chars remaining.
+	 */
+	static CharBuffer chars(int size){
+		return (CharBuffer) acquire(CHARS, size);
+	}
+
+	/**
+	 * Hands a buffer back for reuse. Neither it nor any view of it may be
+	 * used afterwards. Null and oversized buffers are ignored; file mappings
+	 * can't be told from direct buffers, so they must never be passed in.
+	 */
+	static void release(Buffer buffer){
+		if(buffer == null){
+			return;
+		}
+		int index = classOf(buffer.capacity());
+		if(index < 0 || Integer.bitCount(buffer.capacity()) != 1){
+			return;
+		}
+		outstanding.decrementAndGet();
+		int kind = buffer instanceof CharBuffer ? CHARS : ((ByteBuffer) buffer).isDirect() ? DIRECT : HEAP;
+		if(LOCAL.get().push(kind, index, buffer)){
+			return;
+		}
+		SHARED[kind][index].offer(buffer);
+	}
+
+	/**
+	 * Starts counting afresh, for a run inside a JVM that already ran others.
+	 * Pooled buffers stay pooled.
+	 */
+	static void resetStats(){
+		acquired.reset();
+		localHits.reset();
+		sharedHits.reset();
+		outstandingBefore = outstanding.get();
+		peakOutstanding.set(outstandingBefore);
+	}
+
+	/**
+	 * Describes pool use since the last reset, one "name: value" pair per
+	 * line, for --stats.
+	 */
+	static String stats(){
+		long total = acquired.sum();
+		long hits = localHits.sum() + sharedHits.sum();
+		String newline = System.lineSeparator();
+		return "buffers acquired: " + total + newline +
+				"pool hit rate: " + (total == 0 ? 0 : Math.round(1000.0 * hits / total) / 10.0) + "%" +
+				" (" + localHits.sum() + " thread cache, " + sharedHits.sum() + " shared)" + newline +
+				"buffers outstanding: " + (outstanding.get() - outstandingBefore) +
+				" (peak " + (peakOutstanding.get() - outstandingBefore) + ")";
+	}
+
+	private static Buffer acquire(int kind, int size){
+		acquired.increment();
+		int index = classOf(Math.max(size, 1 << MIN_SHIFT));
+		if(index < 0){
+			return allocate(kind, size);
+		}
+		Buffer buffer = LOCAL.get().pop(kind, index);
+		if(buffer != null){
+			localHits.increment();
+		}
+		else if((buffer = SHARED[kind][index].poll()) != null){
+			sharedHits.increment();
+		}
+		else {
+			buffer = allocate(kind, 1 << (index + MIN_SHIFT));
+		}
+		long now = outstanding.incrementAndGet();
+		long peak;
+		while(now > (peak = peakOutstanding.get()) && !peakOutstanding.compareAndSet(peak, now)){
+			//Lost to another thread, try again
+		}
+		buffer.clear();
+		return buffer;
+	}
+
+	private static Buffer allocate(int kind, int capacity){
+		switch(kind){
+			case DIRECT: return ByteBuffer.allocateDirect(capacity);
+			case CHARS: return CharBuffer.allocate(capacity);
+			default: return ByteBuffer.allocate(capacity);
+		}
+	}
+
+	//Smallest class holding size, or -1 beyond the largest
+	private static int classOf(int size){
+		int shift = size <= 1 << MIN_SHIFT ? MIN_SHIFT : 32 - Integer.numberOfLeadingZeros(size - 1);
+		return shift > MAX_SHIFT ? -1 : shift - MIN_SHIFT;
+	}
+
+	//The shared pool of one kind and size class, with its size kept apart since the queue's is O(n)
+	private static final class Shared {
+		private final ConcurrentLinkedQueue<Buffer> queue = new ConcurrentLinkedQueue<Buffer>();
+		private final AtomicInteger size = new AtomicInteger();
+
+		//Drops the buffer once SHARED_LIMIT are pooled
+		void offer(Buffer buffer){
+			if(size.incrementAndGet() <= SHARED_LIMIT){
+				queue.offer(buffer);
+			}
+			else {
+				size.decrementAndGet();
+			}
+		}
+
+		Buffer poll(){
+			Buffer buffer = queue.poll();
+			if(buffer != null){
+				size.decrementAndGet();
+			}
+			return buffer;
+		}
+	}
+
+	//A thread's own few buffers per kind and class, reached without synchronization
+	private static final class Cache {
+		private final Buffer[][][] buffers = new Buffer[3][CLASSES][LOCAL_LIMIT];
+		private final int[][] counts = new int[3][CLASSES];
+
+		Buffer pop(int kind, int index){
+			int count = counts[kind][index];
+			if(count == 0){
+				return null;
+			}
+			counts[kind][index] = --count;
+			Buffer buffer = buffers[kind][index][count];
+			buffers[kind][index][count] = null;
+			return buffer;
+		}
+
+		boolean push(int kind, int index, Buffer buffer){
+			int count = counts[kind][index];
+			if(count == LOCAL_LIMIT){
+				return false;
+			}
+			buffers[kind][index][count] = buffer;
+			counts[kind][index] = count + 1;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package edu.gatech.seclass.texttool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A streaming compression format. Gzip is built in; further codecs (e.g. zstd)
+ * are picked up through {@link java.util.ServiceLoader} by listing them in
+ * META-INF/services/edu.gatech.seclass.texttool.Codec.
+ */
+public interface Codec {
+	/**
+	 * Returns true if a stream starting with the given bytes is in this format.
+	 */
+	boolean matches(byte[] header, int length);
+
+	/**
+	 * File name extension, including the dot, that selects this codec for output.
+	 */
+	String extension();
+
+	InputStream decompress(InputStream in) throws IOException;
+
+	OutputStream compress(OutputStream out) throws IOException;
+}
@@ -0,0 +1,85 @@
+package edu.gatech.seclass.texttool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Finds the codec for an input by its leading bytes and for an output by its
+ * file name. Plugin codecs are only loaded once the built-in one doesn't apply,
+ * keeping ServiceLoader off the startup path for ordinary text.
+ */
+final class Codecs {
+	private static final int HEADER_SIZE = 16;
+	private static final Codec GZIP = new GzipCodec();
+	private static List<Codec> plugins;
+
+	private Codecs(){
+	}
+
+	/**
+	 * Returns the codec the file is compressed with, or null for plain input.
+	 */
+	static Codec detect(Path file) throws IOException {
+		byte[] header = new byte[HEADER_SIZE];
+		int length = 0;
+		try(InputStream in = Files.newInputStream(file)){
+			int read;
+			while(length < header.length && (read = in.read(header, length, header.length - length)) > 0){
+				length += read;
+			}
+		}
+		if(GZIP.matches(header, length)){
+			return GZIP;
+		}
+		//Compressed formats start with binary magic numbers, so plain ASCII text never needs the plugin scan
+		if(isAsciiText(header, length)){
+			return null;
+		}
+		for(Codec codec : plugins()){
+			if(codec.matches(header, length)){
+				return codec;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the codec selected by the output file's extension, or null.
+	 */
+	static Codec forName(String fileName){
+		if(fileName.endsWith(GZIP.extension())){
+			return GZIP;
+		}
+		for(Codec codec : plugins()){
+			if(fileName.endsWith(codec.extension())){
+				return codec;
+			}
+		}
+		return null;
+	}
+
+	private static boolean isAsciiText(byte[] header, int length){
+		for(int i = 0; i < length; i++){
+			byte b = header[i];
+			if(b < 0 || (b < ' ' && b != '\t' && b != '\n' && b != '\r')){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static synchronized List<Codec> plugins(){
+		if(plugins == null){
+			plugins = new ArrayList<Codec>();
+			for(Codec codec : ServiceLoader.load(Codec.class)){
+				plugins.add(codec);
+			}
+		}
+		return plugins;
+	}
+}
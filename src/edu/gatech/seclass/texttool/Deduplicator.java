@@ -0,0 +1,173 @@
+package edu.gatech.seclass.texttool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Drops repeated lines in a single streaming pass. Lines are tracked by a
+ * 64-bit fingerprint rather than as Strings.
+ *
+ * The exact mode keeps fingerprints in an open addressing long[] table next
+ * to the index of the first line that produced each one; that line's bytes
+ * live in a {@link LineStore}, so a fingerprint match is confirmed byte for
+ * byte and collisions never drop a unique line. The approximate mode only
+ * keeps a Bloom filter, a fixed number of bits per expected line, at the cost
+ * of dropping roughly one unique line in a hundred.
+ */
+abstract class Deduplicator implements Closeable {
+	static final double FALSE_POSITIVE_RATE = 0.01;
+
+	/**
+	 * Keeps first occurrences in a store of up to memoryLimit bytes of memory,
+	 * spilling to disk beyond that.
+	 */
+	static Deduplicator exact(Charset charset, long memoryLimit){
+		return new Exact(charset, memoryLimit);
+	}
+
+	/**
+	 * A Bloom filter sized for expectedLines, but never larger than maxBytes.
+	 */
+	static Deduplicator approximate(long expectedLines, long maxBytes){
+		return new Approximate(expectedLines, maxBytes);
+	}
+
+	/**
+	 * Records line, returning true the first time it is seen.
+	 */
+	abstract boolean add(CharSequence line) throws IOException;
+
+	/**
+	 * True when the filter had to be made smaller than its sizing, which
+	 * raises the rate of unique lines dropped above FALSE_POSITIVE_RATE.
+	 */
+	boolean clamped(){
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+	}
+
+	static long fingerprint(CharSequence line){
+		//FNV-1a over the chars, then a 64-bit finalizer to spread the low bits
+		long hash = 0xCBF29CE484222325L;
+		for(int i = 0; i < line.length(); i++){
+			hash = (hash ^ line.charAt(i)) * 0x100000001B3L;
+		}
+		return mix(hash);
+	}
+
+	static long mix(long hash){
+		hash = (hash ^ (hash >>> 33)) * 0xFF51AFD7ED558CCDL;
+		hash = (hash ^ (hash >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return hash ^ (hash >>> 33);
+	}
+
+	private static final class Exact extends Deduplicator {
+		private final LineStore store;
+		private long[] fingerprints = new long[1 << 12];
+		private int[] lines = new int[1 << 12];		//Store index + 1; 0 marks an empty slot
+		private int mask = fingerprints.length - 1;
+		private int count;
+
+		Exact(Charset charset, long memoryLimit){
+			this.store = new LineStore(memoryLimit, charset);
+		}
+
+		@Override
+		boolean add(CharSequence line) throws IOException {
+			long fingerprint = fingerprint(line);
+			int candidate = -1;
+			int slot = (int) fingerprint & mask;
+			while(lines[slot] != 0){
+				if(fingerprints[slot] == fingerprint){
+					//Verify against the stored line; a true collision keeps probing
+					if(candidate < 0){
+						candidate = store.add(line, 0);
+					}
+					if(store.sameBytes(lines[slot] - 1, candidate)){
+						store.removeLast();
+						return false;
+					}
+				}
+				slot = (slot + 1) & mask;
+			}
+			if(candidate < 0){
+				candidate = store.add(line, 0);
+			}
+			fingerprints[slot] = fingerprint;
+			lines[slot] = candidate + 1;
+			if(++count > fingerprints.length / 2){
+				grow();
+			}
+			return true;
+		}
+
+		@Override
+		public void close() throws IOException {
+			store.close();
+		}
+
+		private void grow(){
+			long[] oldFingerprints = fingerprints;
+			int[] oldLines = lines;
+			fingerprints = new long[oldFingerprints.length * 2];
+			lines = new int[oldLines.length * 2];
+			mask = fingerprints.length - 1;
+			for(int i = 0; i < oldLines.length; i++){
+				if(oldLines[i] != 0){
+					int slot = (int) oldFingerprints[i] & mask;
+					while(lines[slot] != 0){
+						slot = (slot + 1) & mask;
+					}
+					fingerprints[slot] = oldFingerprints[i];
+					lines[slot] = oldLines[i];
+				}
+			}
+		}
+	}
+
+	private static final class Approximate extends Deduplicator {
+		private final long[] bits;
+		private final long bitCount;
+		private final int hashes;
+		private final boolean clamped;
+
+		Approximate(long expectedLines, long maxBytes){
+			//Standard Bloom filter sizing for the target false positive rate
+			double ln2 = Math.log(2);
+			long wanted = (long) Math.ceil(-expectedLines * Math.log(FALSE_POSITIVE_RATE) / (ln2 * ln2));
+			long wantedWords = Math.max(1, (wanted + 63) / 64);
+			int words = (int) Math.min(Math.min(Integer.MAX_VALUE - 8, Math.max(1, maxBytes / 8)), wantedWords);
+			this.clamped = words < wantedWords;
+			this.bits = new long[words];
+			this.bitCount = (long) words * 64;
+			this.hashes = Math.max(1, (int) Math.round((double) bitCount / Math.max(1, expectedLines) * ln2));
+		}
+
+		@Override
+		boolean clamped(){
+			return clamped;
+		}
+
+		@Override
+		boolean add(CharSequence line){
+			//Double hashing: the k probe positions are h1 + i * h2
+			long h1 = fingerprint(line);
+			long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+			boolean seen = true;
+			for(int i = 0; i < hashes; i++){
+				long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+				int word = (int) (bit >>> 6);
+				long mask = 1L << bit;
+				if((bits[word] & mask) == 0){
+					seen = false;
+					bits[word] |= mask;
+				}
+			}
+			return !seen;
+		}
+	}
+}
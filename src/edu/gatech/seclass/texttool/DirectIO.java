@@ -0,0 +1,274 @@
+package edu.gatech.seclass.texttool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.sun.nio.file.ExtendedOpenOption;
+
+/**
+ * Opens files for --direct: reads and writes that bypass the page cache
+ * (O_DIRECT), so a huge one-shot run doesn't evict everything else cached on
+ * the host. Direct transfers must start at block-aligned file offsets, from
+ * block-aligned memory, in whole blocks, so both channels stage data in an
+ * aligned buffer of their own. The output's final partial block is written
+ * padded and the file then truncated to its true length.
+ *
+ * Where the file system refuses direct access, or the platform lacks it,
+ * the file is opened normally instead.
+ */
+final class DirectIO {
+	static final int BUFFER_BYTES = 1 << 20;
+	private static final int DEFAULT_BLOCK = 4096;
+
+	private DirectIO(){
+	}
+
+	/**
+	 * Opens file for reading, directly if possible.
+	 */
+	static SeekableByteChannel openRead(Path file) throws IOException {
+		int block = blockSize(file);
+		FileChannel channel = openDirect(file, StandardOpenOption.READ);
+		if(channel != null){
+			ByteBuffer buffer = aligned(block);
+			try {
+				//Some file systems accept the flag but reject the reads
+				channel.read(buffer, 0);
+				return new DirectReader(channel, block);
+			}
+			catch(IOException e){
+				channel.close();
+			}
+		}
+		return FileChannel.open(file, StandardOpenOption.READ);
+	}
+
+	/**
+	 * Creates file, which must not exist, for writing, directly if possible.
+	 */
+	static WritableByteChannel create(Path file) throws IOException {
+		int block = blockSize(file.toAbsolutePath().getParent());
+		boolean existed = Files.exists(file, LinkOption.NOFOLLOW_LINKS);
+		FileChannel channel = openDirect(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		if(channel == null){
+			//Linux creates the file before rejecting O_DIRECT, so the failed open may have made it
+			if(!existed && Files.exists(file, LinkOption.NOFOLLOW_LINKS)){
+				return FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+			}
+			return FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+		}
+		try {
+			//Some file systems accept the flag but reject the writes
+			channel.write(aligned(block), 0);
+			return new DirectWriter(channel, block);
+		}
+		catch(IOException e){
+			channel.close();
+			return FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		}
+	}
+
+	private static FileChannel openDirect(Path file, OpenOption... options) throws IOException {
+		OpenOption[] direct = new OpenOption[options.length + 1];
+		System.arraycopy(options, 0, direct, 0, options.length);
+		direct[options.length] = ExtendedOpenOption.DIRECT;
+		try {
+			return FileChannel.open(file, direct);
+		}
+		catch(UnsupportedOperationException e){
+			return null;
+		}
+		catch(IOException e){
+			//EINVAL from file systems without O_DIRECT; a missing or existing file fails again below
+			return null;
+		}
+	}
+
+	private static int blockSize(Path path){
+		try {
+			long size = Files.getFileStore(path).getBlockSize();
+			return size > 0 && size <= BUFFER_BYTES && Long.bitCount(size) == 1 ? (int) size : DEFAULT_BLOCK;
+		}
+		catch(IOException | UnsupportedOperationException e){
+			return DEFAULT_BLOCK;
+		}
+	}
+
+	//A direct buffer of the given length whose address is a multiple of the block size
+	private static ByteBuffer aligned(int length){
+		return ByteBuffer.allocateDirect(length + DEFAULT_BLOCK).alignedSlice(DEFAULT_BLOCK).limit(length);
+	}
+
+	//Reads whole aligned blocks into its buffer and hands them out in any amounts
+	private static final class DirectReader implements SeekableByteChannel {
+		private final FileChannel file;
+		private final int block;
+		private final ByteBuffer buffer;
+		private long bufferStart;		//File offset of the buffer's first byte
+		private boolean eof;
+
+		DirectReader(FileChannel file, int block){
+			this.file = file;
+			this.block = block;
+			this.buffer = ByteBuffer.allocateDirect(BUFFER_BYTES + Math.max(block, DEFAULT_BLOCK))
+					.alignedSlice(Math.max(block, DEFAULT_BLOCK));
+			buffer.limit(0);
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			if(!buffer.hasRemaining()){
+				if(eof){
+					return -1;
+				}
+				fill(bufferStart + buffer.limit());
+				if(!buffer.hasRemaining()){
+					return -1;
+				}
+			}
+			int length = Math.min(dst.remaining(), buffer.remaining());
+			int limit = buffer.limit();
+			buffer.limit(buffer.position() + length);
+			dst.put(buffer);
+			buffer.limit(limit);
+			return length;
+		}
+
+		@Override
+		public long position(){
+			return bufferStart + buffer.position();
+		}
+
+		@Override
+		public SeekableByteChannel position(long newPosition) throws IOException {
+			if(newPosition >= bufferStart && newPosition <= bufferStart + buffer.limit()){
+				buffer.position((int) (newPosition - bufferStart));
+				return this;
+			}
+			long alignedStart = newPosition - newPosition % block;
+			eof = false;
+			fill(alignedStart);
+			buffer.position((int) Math.min(buffer.limit(), newPosition - alignedStart));
+			return this;
+		}
+
+		@Override
+		public long size() throws IOException {
+			return file.size();
+		}
+
+		@Override
+		public int write(ByteBuffer src){
+			throw new NonWritableChannelException();
+		}
+
+		@Override
+		public SeekableByteChannel truncate(long size){
+			throw new NonWritableChannelException();
+		}
+
+		@Override
+		public boolean isOpen(){
+			return file.isOpen();
+		}
+
+		@Override
+		public void close() throws IOException {
+			file.close();
+		}
+
+		//Refills the buffer from an aligned file offset; a short read means the end
+		private void fill(long alignedStart) throws IOException {
+			bufferStart = alignedStart;
+			buffer.clear();
+			int read;
+			while(buffer.hasRemaining() && (read = file.read(buffer, alignedStart + buffer.position())) > 0){
+				if(read % block != 0){
+					break;
+				}
+			}
+			eof = buffer.hasRemaining();
+			buffer.flip();
+		}
+	}
+
+	//Collects output into whole aligned blocks; close pads the last one and trims the file back
+	private static final class DirectWriter implements WritableByteChannel {
+		private final FileChannel file;
+		private final int block;
+		private final ByteBuffer buffer;
+		private long written;		//File offset the buffer is written to, always aligned
+
+		DirectWriter(FileChannel file, int block){
+			this.file = file;
+			this.block = block;
+			this.buffer = ByteBuffer.allocateDirect(BUFFER_BYTES + Math.max(block, DEFAULT_BLOCK))
+					.alignedSlice(Math.max(block, DEFAULT_BLOCK));
+			buffer.limit(BUFFER_BYTES);
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			int length = src.remaining();
+			while(src.hasRemaining()){
+				int part = Math.min(src.remaining(), buffer.remaining());
+				int limit = src.limit();
+				src.limit(src.position() + part);
+				buffer.put(src);
+				src.limit(limit);
+				if(!buffer.hasRemaining()){
+					drain(buffer.position());
+				}
+			}
+			return length;
+		}
+
+		@Override
+		public boolean isOpen(){
+			return file.isOpen();
+		}
+
+		@Override
+		public void close() throws IOException {
+			if(!file.isOpen()){
+				return;
+			}
+			try {
+				int tail = buffer.position();
+				long length = written + tail;
+				if(tail > 0){
+					//Pad to a whole block, then cut the padding off again
+					int padded = (tail + block - 1) / block * block;
+					while(buffer.position() < padded){
+						buffer.put((byte) 0);
+					}
+					drain(padded);
+				}
+				//Also drops the block written when probing
+				file.truncate(length);
+			}
+			finally {
+				file.close();
+			}
+		}
+
+		private void drain(int length) throws IOException {
+			buffer.flip();
+			buffer.limit(length);
+			while(buffer.hasRemaining()){
+				written += file.write(buffer, written);
+			}
+			buffer.clear();
+			buffer.limit(BUFFER_BYTES);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package edu.gatech.seclass.texttool;
+
+/**
+ * Caesar cipher. The shift is normalized once and ASCII characters go through
+ * a precomputed table; other characters keep the original arithmetic.
+ */
+final class EncodeTransform implements LineTransform {
+	private final int shift;
+	private final char[] ascii = new char[128];
+
+	EncodeTransform(int cipherInt){
+		this.shift = Math.floorMod(cipherInt, 26);
+		for(char c = 0; c < ascii.length; c++){
+			ascii[c] = encode(c, shift);
+		}
+	}
+
+	/**
+	 * Parses a shift of any size, returning it reduced to 0-25. The digits are
+	 * reduced as they are read, so no value overflows.
+	 */
+	static int parseShift(String text){
+		boolean negative = text.startsWith("-");
+		int i = negative || text.startsWith("+") ? 1 : 0;
+		if(i == text.length()){
+			throw new NumberFormatException(text);
+		}
+		int shift = 0;
+		for(; i < text.length(); i++){
+			int digit = Character.digit(text.charAt(i), 10);
+			if(digit < 0){
+				throw new NumberFormatException(text);
+			}
+			shift = (shift * 10 + digit) % 26;
+		}
+		return negative ? (26 - shift) % 26 : shift;
+	}
+
+	@Override
+	public boolean isStateless(){
+		return true;
+	}
+
+	//ASCII letters shift to ASCII letters
+	@Override
+	public int asciiGrowth(){
+		return 0;
+	}
+
+	@Override
+	public void apply(CharSequence line, int start, int end, StringBuilder out){
+		for(int i = start; i < end; i++){
+			char c = line.charAt(i);
+			out.append(c < ascii.length ? ascii[c] : encode(c, shift));
+		}
+	}
+
+	private static char encode(char c, int shift){
+		if (Character.isAlphabetic(c)) {
+			//Captial A-Z
+			if (Character.isUpperCase(c)) {
+				return (char) (((c - 'A') + shift) % 26 + 'A');
+			}
+			//Lowercase a-z
+			return (char) (((c - 'a') + shift) % 26 + 'a');
+		}
+		//Non-alphabetic character
+		return c;
+	}
+}
@@ -0,0 +1,37 @@
+package edu.gatech.seclass.texttool;
+
+/**
+ * Why a run failed, with the exit status it maps to. Statuses follow the BSD
+ * sysexits.h convention, so scripts can tell a bad invocation (64) from bad
+ * input data (65), a missing input (66), an output that can't be created (73)
+ * and an I/O failure (74).
+ */
+enum ErrorCode {
+	//Invocation errors, all found before any file is opened
+	MISSING_ARGUMENTS(64),
+	UNEXPECTED_PARAMETER(64),
+	PARAMETER_COUNT(64),
+	INVALID_NUMBER(64),
+	OUT_OF_RANGE(64),
+	INVALID_VALUE(64),
+	CONFLICTING_OPTIONS(64),
+	MISSING_OPTION(64),
+	INVALID_PATTERN(64),
+	INVALID_CHARSET(64),
+
+	//Input and output errors
+	INPUT_NOT_FOUND(66),
+	OUTPUT_EXISTS(73),
+	OUTPUT_NOT_CREATED(73),
+	MISSING_FINAL_NEWLINE(65),
+	MALFORMED_INPUT(65),
+	REGEX_TIMEOUT(65),
+	IO_ERROR(74),
+	INTERNAL_ERROR(70);
+
+	final int status;
+
+	ErrorCode(int status){
+		this.status = status;
+	}
+}
@@ -0,0 +1,257 @@
+package edu.gatech.seclass.texttool;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Predicts what a run would produce without writing anything. Up to
+ * SAMPLE_BLOCKS blocks spread evenly over the input are run through the real
+ * filter, chain and writer, the writer feeding a channel that only counts
+ * bytes, and the counts are scaled up to the whole file. Input no larger than
+ * the sample is measured exactly. Compressed input is sampled from its start
+ * and its size extrapolated from the compression ratio seen so far.
+ */
+final class Estimator {
+	static final int SAMPLE_BLOCKS = 16;
+	static final int BLOCK_SIZE = 1 << 20;
+
+	private final LineFilter filter;
+	private final TransformChain chain;
+	private final TextEncoding encoding;
+	private final LineEnding ending;
+	private final long copies;
+	private final CountingChannel counter = new CountingChannel();
+	private final LineWriter writer;
+
+	private long inputBytes;		//Whole input, decompressed
+	private boolean exact;		//Every line was sampled
+	private boolean sizeKnown = true;
+	private long sampledBytes;
+	private long lines;
+	private long kept;
+	private long changed;
+	private int longestLine;
+	private long readNanos;
+	private long processNanos;
+
+	Estimator(LineFilter filter, TransformChain chain, TextEncoding encoding, LineEnding ending, long copies){
+		this.filter = filter;
+		this.chain = chain;
+		this.encoding = encoding;
+		this.ending = ending;
+		this.copies = copies;
+		this.writer = new LineWriter(counter, encoding.charset);
+	}
+
+	void sample(Path file, Codec codec) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			long size = channel.size();
+			if(codec != null){
+				sampleCompressed(channel, codec, size);
+			}
+			else if(size <= (long) SAMPLE_BLOCKS * BLOCK_SIZE){
+				inputBytes = size;
+				exact = true;
+				byte[] block = read(channel, 0, (int) size);
+				sampleRegion(block, 0, block.length);
+			}
+			else {
+				inputBytes = size;
+				for(int i = 0; i < SAMPLE_BLOCKS; i++){
+					long offset = i * ((size - BLOCK_SIZE) / (SAMPLE_BLOCKS - 1));
+					byte[] block = read(channel, offset, BLOCK_SIZE);
+					//Only whole lines count: skip the one cut at the start, and the one cut at the end
+					int from = offset == 0 ? 0 : LineScanner.indexOf(ByteBuffer.wrap(block), 0, block.length) + 1;
+					int to = offset + BLOCK_SIZE == size ? block.length : lastNewline(block) + 1;
+					if(offset > 0 && from == 0){
+						continue;	//No line starts in this block
+					}
+					if(from < to){
+						sampleRegion(block, from, to);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Prints the prediction, one "name: value" pair per line.
+	 * lineRange is {first, count} lines from --lines, or null.
+	 */
+	void report(PrintStream out, long[] lineRange, boolean deduplicate, long sortBudget){
+		double scale = sampledBytes == 0 ? 0 : (double) inputBytes / sampledBytes;
+		long totalLines = Math.round(lines * scale);
+		double share = 1;
+		if(lineRange != null && totalLines > 0){
+			long inRange = Math.max(0, Math.min(totalLines - lineRange[0], lineRange[1]));
+			share = (double) inRange / totalLines;
+		}
+		long keptLines = Math.round(kept * scale * share);
+		//Duplicates are exact copies, so they are counted rather than written
+		long keptOutput = Math.round(counter.count * scale * share);
+		long outputBytes = Math.round(counter.count * scale * share * copies);
+
+		//Reader and writer buffers, the reader grown to hold the longest line
+		long memory = 2L * LineReader.CHUNK_SIZE;
+		long readBuffer = LineReader.CHUNK_SIZE;
+		while(readBuffer < longestLine){
+			readBuffer *= 2;
+		}
+		memory += readBuffer;
+		if(deduplicate){
+			//Unique lines kept off-heap with a 13 byte index entry, plus a table at most half full
+			long slots = Long.highestOneBit(Math.max(1, keptLines) * 2) * 2;
+			memory += keptOutput + keptLines * 13 + slots * 12;
+		}
+		if(sortBudget > 0){
+			memory += Math.min(sortBudget, keptOutput + keptLines * 13);
+		}
+
+		double cpuRate = processNanos == 0 ? 0 : sampledBytes * 1e9 / processNanos;
+		double readRate = readNanos == 0 ? 0 : sampledBytes * 1e9 / readNanos;
+		double seconds = (cpuRate == 0 ? 0 : inputBytes / cpuRate) + (readRate == 0 ? 0 : inputBytes / readRate);
+
+		out.println("input bytes: " + inputBytes + (sizeKnown ? "" : " (estimated)"));
+		out.println("lines: " + totalLines + (exact ? "" : " (estimated from " + sampledBytes + " sampled bytes)"));
+		out.println("average line bytes: " + format(lines == 0 ? 0 : (double) sampledBytes / lines));
+		if(filter != null){
+			out.println("lines kept by filters: " + format(lines == 0 ? 0 : 100.0 * kept / lines) + "%");
+		}
+		out.println("lines changed by operations: " + format(kept == 0 ? 0 : 100.0 * changed / kept) + "%");
+		out.println("output bytes: " + (deduplicate ? "at most " : "") + outputBytes);
+		out.println("peak memory bytes: " + memory);
+		out.println("throughput MB/s: " + format(seconds == 0 ? 0 : inputBytes / seconds / (1 << 20)));
+		out.println("runtime seconds: " + format(seconds));
+	}
+
+	private void sampleCompressed(FileChannel channel, Codec codec, long size) throws IOException {
+		byte[] block = new byte[SAMPLE_BLOCKS * BLOCK_SIZE];
+		int length = 0;
+		boolean eof = false;
+		long start = System.nanoTime();
+		InputStream in = codec.decompress(Channels.newInputStream(channel));
+		while(length < block.length){
+			int read = in.read(block, length, block.length - length);
+			if(read < 0){
+				eof = true;
+				break;
+			}
+			length += read;
+		}
+		readNanos += System.nanoTime() - start;
+		if(eof){
+			inputBytes = length;
+			exact = true;
+			sampleRegion(block, 0, length);
+		}
+		else {
+			sizeKnown = false;
+			inputBytes = extrapolate(length, channel.position(), size);
+			sampleRegion(block, 0, lastNewline(block) + 1);
+		}
+	}
+
+	/**
+	 * Estimates the decompressed size of file from the compression ratio of
+	 * its first block.
+	 */
+	static long decompressedSize(Path file, Codec codec) throws IOException {
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			InputStream in = codec.decompress(Channels.newInputStream(channel));
+			byte[] block = new byte[BLOCK_SIZE];
+			int length = 0;
+			int read = 0;
+			while(length < block.length && (read = in.read(block, length, block.length - length)) >= 0){
+				length += read;
+			}
+			return read < 0 ? length : extrapolate(length, channel.position(), channel.size());
+		}
+	}
+
+	//Scales decompressed bytes by the compressed bytes read for them to the whole file.
+	//The decompressor reads ahead, so the ratio is a little low
+	private static long extrapolate(long decompressed, long compressed, long size){
+		return Math.round((double) decompressed / Math.max(1, compressed) * size);
+	}
+
+	private void sampleRegion(byte[] block, int from, int to) throws IOException {
+		long start = System.nanoTime();
+		String fixed = ending.fixedSeparator();
+		try(LineReader reader = new LineReader(Channels.newChannel(new ByteArrayInputStream(block, from, to - from)),
+				encoding.charset, CodingErrorAction.REPLACE)){
+			while(reader.next()){
+				lines++;
+				longestLine = Math.max(longestLine, reader.end() - reader.start());
+				CharBuffer line = reader.line();
+				if(filter != null && !filter.accept(line)){
+					continue;
+				}
+				kept++;
+				int length = line.length();
+				CharSequence result = chain.apply(line);
+				if(result != line && (result.length() != length || CharSequence.compare(result, line) != 0)){
+					changed++;
+				}
+				writer.write(result, fixed != null ? fixed : LineEnding.separatorOf(reader.terminator()));
+			}
+		}
+		writer.flush();
+		processNanos += System.nanoTime() - start;
+		sampledBytes += to - from;
+	}
+
+	private byte[] read(FileChannel channel, long offset, int length) throws IOException {
+		long start = System.nanoTime();
+		ByteBuffer buf = ByteBuffer.allocate(length);
+		while(buf.hasRemaining() && channel.read(buf, offset + buf.position()) > 0){
+			//Keep reading until full
+		}
+		readNanos += System.nanoTime() - start;
+		return buf.array();
+	}
+
+	private static int lastNewline(byte[] block){
+		for(int i = block.length - 1; i >= 0; i--){
+			if(block[i] == '\n'){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static String format(double value){
+		return String.valueOf(Math.round(value * 10) / 10.0);
+	}
+
+	//Counts what the writer produces and drops it
+	private static final class CountingChannel implements WritableByteChannel {
+		long count;
+
+		@Override
+		public int write(ByteBuffer src){
+			int length = src.remaining();
+			src.position(src.limit());
+			count += length;
+			return length;
+		}
+
+		@Override
+		public boolean isOpen(){
+			return true;
+		}
+
+		@Override
+		public void close(){
+		}
+	}
+}
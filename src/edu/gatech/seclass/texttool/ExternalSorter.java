@@ -0,0 +1,271 @@
+package edu.gatech.seclass.texttool;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Sorts lines by their encoded bytes (unsigned, i.e. code point order for
+ * UTF-8), stably. Lines collect in a {@link LineStore}; when everything fits
+ * in the memory budget they are sorted in place. Otherwise each full store is
+ * handed to a worker thread that sorts it and writes it out as a run file,
+ * while reading carries on into a fresh store, and the runs are k-way merged
+ * at the end.
+ */
+final class ExternalSorter implements Closeable {
+	private final Charset charset;
+	private final long runBudget;
+	private final int threads;
+	private final ExecutorService workers;
+	private final ArrayDeque<Future<Path>> pending = new ArrayDeque<Future<Path>>();
+	private final List<Path> runs = new ArrayList<Path>();
+	private LineStore current;
+	private long currentBytes;
+
+	ExternalSorter(long memoryBudget, int threads, Charset charset){
+		this.charset = charset;
+		this.threads = threads;
+		//Every in-flight run and the one being filled share the budget
+		this.runBudget = Math.max(LineStore.BLOCK_SIZE, memoryBudget / (threads + 1));
+		this.workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable task){
+				Thread thread = new Thread(task, "texttool-sort");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.current = newStore();
+	}
+
+	void add(CharSequence line, int tag) throws IOException {
+		current.add(line, tag);
+		//Estimate: UTF-8 bytes for mostly ASCII text plus the index entry
+		currentBytes += line.length() + 13;
+		if(currentBytes >= runBudget){
+			spill();
+		}
+	}
+
+	/**
+	 * Emits every line added so far, in order, to sink.
+	 */
+	void finish(LineSink sink) throws IOException {
+		if(runs.isEmpty() && pending.isEmpty()){
+			//Everything fit in memory
+			int[] order = sortedOrder(current);
+			for(int index : order){
+				sink.accept(current.get(index), current.tag(index));
+			}
+			return;
+		}
+		if(current.size() > 0){
+			spill();
+		}
+		while(!pending.isEmpty()){
+			runs.add(await(pending.poll()));
+		}
+		merge(sink);
+	}
+
+	@Override
+	public void close() throws IOException {
+		workers.shutdownNow();
+		current.close();
+		for(Path run : runs){
+			Files.deleteIfExists(run);
+		}
+		for(Future<Path> future : pending){
+			future.cancel(true);
+		}
+	}
+
+	private LineStore newStore(){
+		//Sorting touches every line repeatedly, so a run never spills to a mapped file
+		return new LineStore(Long.MAX_VALUE, charset);
+	}
+
+	private void spill() throws IOException {
+		//Bound the runs in flight so memory stays within budget
+		while(pending.size() >= threads){
+			runs.add(await(pending.poll()));
+		}
+		final LineStore full = current;
+		pending.add(workers.submit(new Callable<Path>() {
+			@Override
+			public Path call() throws IOException {
+				try {
+					return writeRun(full);
+				}
+				finally {
+					full.close();
+				}
+			}
+		}));
+		current = newStore();
+		currentBytes = 0;
+	}
+
+	private static Path await(Future<Path> future) throws IOException {
+		try {
+			return future.get();
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		}
+		catch(ExecutionException e){
+			throw new IOException(e.getCause());
+		}
+	}
+
+	//Run file record: int length, byte tag, then the encoded line
+	private static Path writeRun(LineStore store) throws IOException {
+		int[] order = sortedOrder(store);
+		Path run = Files.createTempFile("texttool", ".run");
+		byte[] scratch = new byte[256];
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), LineReader.CHUNK_SIZE))){
+			for(int index : order){
+				ByteBuffer bytes = store.bytes(index);
+				int length = bytes.remaining();
+				if(scratch.length < length){
+					scratch = new byte[Math.max(length, scratch.length * 2)];
+				}
+				bytes.get(scratch, 0, length);
+				out.writeInt(length);
+				out.writeByte(store.tag(index));
+				out.write(scratch, 0, length);
+			}
+		}
+		return run;
+	}
+
+	private void merge(LineSink sink) throws IOException {
+		PriorityQueue<RunCursor> queue = new PriorityQueue<RunCursor>(runs.size());
+		List<RunCursor> cursors = new ArrayList<RunCursor>();
+		try {
+			for(int i = 0; i < runs.size(); i++){
+				RunCursor cursor = new RunCursor(runs.get(i), i);
+				cursors.add(cursor);
+				if(cursor.advance()){
+					queue.add(cursor);
+				}
+			}
+			CharsetDecoder decoder = charset.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE);
+			CharBuffer chars = CharBuffer.allocate(256);
+			while(!queue.isEmpty()){
+				RunCursor cursor = queue.poll();
+				int needed = (int) Math.ceil(cursor.length * (double) decoder.maxCharsPerByte());
+				if(chars.capacity() < needed){
+					chars = CharBuffer.allocate(Math.max(needed, chars.capacity() * 2));
+				}
+				chars.clear();
+				decoder.reset();
+				decoder.decode(ByteBuffer.wrap(cursor.bytes, 0, cursor.length), chars, true);
+				decoder.flush(chars);
+				chars.flip();
+				sink.accept(chars, cursor.tag);
+				if(cursor.advance()){
+					queue.add(cursor);
+				}
+			}
+		}
+		finally {
+			for(RunCursor cursor : cursors){
+				cursor.in.close();
+			}
+		}
+	}
+
+	//Stable merge sort of line indexes, comparing bytes in the store
+	static int[] sortedOrder(LineStore store){
+		int size = store.size();
+		int[] order = new int[size];
+		for(int i = 0; i < size; i++){
+			order[i] = i;
+		}
+		int[] scratch = new int[size];
+		for(int width = 1; width < size; width *= 2){
+			for(int low = 0; low < size - width; low += 2 * width){
+				int mid = low + width;
+				int high = Math.min(low + 2 * width, size);
+				if(store.compare(order[mid - 1], order[mid]) <= 0){
+					continue;	//Already in order
+				}
+				int i = low;
+				int j = mid;
+				int k = low;
+				while(i < mid && j < high){
+					scratch[k++] = store.compare(order[i], order[j]) <= 0 ? order[i++] : order[j++];
+				}
+				while(i < mid){
+					scratch[k++] = order[i++];
+				}
+				while(j < high){
+					scratch[k++] = order[j++];
+				}
+				System.arraycopy(scratch, low, order, low, high - low);
+			}
+		}
+		return order;
+	}
+
+	private static final class RunCursor implements Comparable<RunCursor> {
+		final DataInputStream in;
+		final int run;
+		byte[] bytes = new byte[256];
+		int length;
+		int tag;
+
+		RunCursor(Path file, int run) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), LineReader.CHUNK_SIZE));
+			this.run = run;
+		}
+
+		boolean advance() throws IOException {
+			try {
+				length = in.readInt();
+			}
+			catch(EOFException e){
+				return false;
+			}
+			tag = in.readByte();
+			if(bytes.length < length){
+				bytes = new byte[Math.max(length, bytes.length * 2)];
+			}
+			in.readFully(bytes, 0, length);
+			return true;
+		}
+
+		//Ties go to the earlier run, keeping the sort stable
+		@Override
+		public int compareTo(RunCursor other){
+			int cmp = Arrays.compareUnsigned(bytes, 0, length, other.bytes, 0, other.length);
+			return cmp != 0 ? cmp : Integer.compare(run, other.run);
+		}
+	}
+}
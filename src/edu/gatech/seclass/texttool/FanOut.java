@@ -0,0 +1,228 @@
+package edu.gatech.seclass.texttool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs each of several branches on a thread of its own, so N outputs cost one
+ * read, decode and filter of the input while their transforms and writes run
+ * side by side. The reading thread copies lines into batches that every
+ * branch reads, never changes and hands back to the {@link BufferPool} once
+ * the last branch is done with them. A branch more than DEPTH batches behind
+ * holds the reader back, so memory stays bounded.
+ *
+ * A branch that fails drops the rest of its batches; the failure is reported
+ * by the next accept(), or at the latest by finish().
+ */
+final class FanOut implements LineSink, Closeable {
+	static final int BATCH_CHARS = 1 << 16;
+	static final int BATCH_LINES = 1024;
+	static final int DEPTH = 4;
+	//Queued after the last batch
+	private static final Batch END = new Batch(0);
+
+	private final List<ArrayBlockingQueue<Batch>> queues = new ArrayList<ArrayBlockingQueue<Batch>>();
+	private final List<Thread> threads = new ArrayList<Thread>();
+	private volatile Throwable failure;
+	private Batch current;
+
+	FanOut(List<Branch> branches){
+		for(int i = 0; i < branches.size(); i++){
+			final Branch branch = branches.get(i);
+			final ArrayBlockingQueue<Batch> queue = new ArrayBlockingQueue<Batch>(DEPTH);
+			Thread thread = new Thread(new Runnable() {
+				@Override
+				public void run(){
+					drain(branch, queue);
+				}
+			}, "texttool-branch-" + i);
+			thread.setDaemon(true);
+			queues.add(queue);
+			threads.add(thread);
+		}
+		for(Thread thread : threads){
+			thread.start();
+		}
+	}
+
+	@Override
+	public void accept(CharSequence line, int tag) throws IOException {
+		int length = line.length();
+		if(current != null && !current.fits(length)){
+			publish();
+		}
+		if(current == null){
+			current = new Batch(Math.max(BATCH_CHARS, length));
+		}
+		current.add(line, tag);
+	}
+
+	/**
+	 * Hands out the last lines and waits until every branch has finished.
+	 */
+	void finish() throws Exception {
+		if(current != null){
+			publish();
+		}
+		for(ArrayBlockingQueue<Batch> queue : queues){
+			put(queue, END);
+		}
+		for(Thread thread : threads){
+			try {
+				thread.join();
+			}
+			catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+		}
+		if(failure != null){
+			throw failure instanceof Exception ? (Exception) failure : new IOException(failure);
+		}
+	}
+
+	/**
+	 * Stops any branch still running. The branches themselves are closed by
+	 * their owner.
+	 */
+	@Override
+	public void close(){
+		for(Thread thread : threads){
+			thread.interrupt();
+		}
+		for(Thread thread : threads){
+			try {
+				thread.join();
+			}
+			catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+			}
+		}
+		if(current != null){
+			current.release(1);
+			current = null;
+		}
+		for(ArrayBlockingQueue<Batch> queue : queues){
+			Batch left;
+			while((left = queue.poll()) != null){
+				left.release(1);
+			}
+		}
+	}
+
+	private void publish() throws IOException {
+		if(failure != null){
+			throw failure instanceof IOException ? (IOException) failure : new IOException(failure);
+		}
+		Batch batch = current;
+		current = null;
+		batch.readers.set(queues.size());
+		for(ArrayBlockingQueue<Batch> queue : queues){
+			put(queue, batch);
+		}
+	}
+
+	private static void put(ArrayBlockingQueue<Batch> queue, Batch batch) throws IOException {
+		try {
+			queue.put(batch);
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+	}
+
+	private void drain(Branch branch, ArrayBlockingQueue<Batch> queue){
+		boolean failed = false;
+		try {
+			Batch batch;
+			while((batch = queue.take()) != END){
+				//After a failure the rest is dropped, so the reader never blocks
+				if(!failed){
+					try {
+						batch.feed(branch);
+					}
+					catch(Throwable e){
+						failed = true;
+						fail(e);
+					}
+				}
+				batch.release(1);
+			}
+			if(!failed){
+				branch.finish();
+			}
+		}
+		catch(InterruptedException e){
+			//Abandoned by the reader
+		}
+		catch(Throwable e){
+			fail(e);
+		}
+	}
+
+	//Errors too, or the reader would wait on this branch's full queue forever
+	private synchronized void fail(Throwable e){
+		if(failure == null){
+			failure = e;
+		}
+	}
+
+	//Lines packed end to end, with where each ends and its tag
+	private static final class Batch {
+		final CharBuffer chars;
+		final int[] ends;
+		final int[] tags;
+		final AtomicInteger readers = new AtomicInteger();
+		int lines;
+
+		Batch(int capacity){
+			this.chars = capacity == 0 ? null : BufferPool.chars(capacity);
+			this.ends = new int[capacity == 0 ? 0 : BATCH_LINES];
+			this.tags = new int[ends.length];
+		}
+
+		boolean fits(int length){
+			return lines < ends.length && chars.remaining() >= length;
+		}
+
+		void add(CharSequence line, int tag){
+			if(line instanceof CharBuffer && ((CharBuffer) line).hasArray()){
+				CharBuffer buf = (CharBuffer) line;
+				chars.put(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+			}
+			else {
+				for(int i = 0; i < line.length(); i++){
+					chars.put(line.charAt(i));
+				}
+			}
+			ends[lines] = chars.position();
+			tags[lines++] = tag;
+		}
+
+		//Each branch reads through a view of its own
+		void feed(Branch branch) throws IOException {
+			CharBuffer view = chars.duplicate();
+			int start = 0;
+			for(int i = 0; i < lines; i++){
+				view.clear();
+				view.limit(ends[i]).position(start);
+				branch.accept(view, tags[i]);
+				start = ends[i];
+			}
+		}
+
+		//The last reader hands the chars back to the pool
+		void release(int count){
+			if(chars != null && readers.addAndGet(-count) <= 0){
+				BufferPool.release(chars);
+			}
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package edu.gatech.seclass.texttool;
+
+import java.util.Arrays;
+
+/**
+ * Field mode: splits each line on a delimiter and runs only the selected
+ * columns through the chain, copying the others through unchanged. Field
+ * bounds are kept as offsets into the line in a reused int[], so no column
+ * is ever copied out into a substring. There is no quoting: every delimiter
+ * char separates fields.
+ */
+final class FieldTransform implements LineTransform {
+	private final char delimiter;
+	private final int[] ranges;	//Sorted, disjoint 1-based (first, last) pairs, interleaved
+	private final TransformChain chain;
+	private int[] bounds = new int[32];	//Start and end of each field, interleaved
+
+	FieldTransform(char delimiter, int[] ranges, TransformChain chain){
+		this.delimiter = delimiter;
+		this.ranges = ranges;
+		this.chain = chain;
+	}
+
+	@Override
+	public void apply(CharSequence line, int start, int end, StringBuilder out){
+		int fields = split(line, start, end);
+		int range = 0;
+		for(int field = 0; field < fields; field++){
+			if(field > 0){
+				out.append(delimiter);
+			}
+			int fieldStart = bounds[2 * field];
+			int fieldEnd = bounds[2 * field + 1];
+			//Fields come in order, so the ranges are walked once per line
+			while(range < ranges.length && ranges[range + 1] < field + 1){
+				range += 2;
+			}
+			if(range < ranges.length && ranges[range] <= field + 1){
+				out.append(chain.apply(line, fieldStart, fieldEnd));
+			}
+			else {
+				out.append(line, fieldStart, fieldEnd);
+			}
+		}
+	}
+
+	@Override
+	public boolean isStateless(){
+		return chain.isStateless();
+	}
+
+	//Lines have varying numbers of fields, so only a chain that never grows stays predictable
+	@Override
+	public int asciiGrowth(){
+		return chain.asciiGrowth() == 0 ? 0 : UNPREDICTABLE;
+	}
+
+	//Fills bounds with the offsets of each field in line[start, end), returning the field count
+	private int split(CharSequence line, int start, int end){
+		int fields = 0;
+		int fieldStart = start;
+		for(int i = start; i <= end; i++){
+			if(i == end || line.charAt(i) == delimiter){
+				if(2 * fields + 2 > bounds.length){
+					int[] grown = new int[bounds.length * 2];
+					System.arraycopy(bounds, 0, grown, 0, bounds.length);
+					bounds = grown;
+				}
+				bounds[2 * fields] = fieldStart;
+				bounds[2 * fields + 1] = i;
+				fields++;
+				fieldStart = i + 1;
+			}
+		}
+		return fields;
+	}
+
+	/**
+	 * Parses a field list such as "1,3,5-7" or "2-" (to the last field) into
+	 * sorted, merged (first, last) pairs.
+	 */
+	static int[] parseFields(String list) throws TextToolException {
+		String[] parts = list.split(",");
+		long[] ranges = new long[parts.length];
+		for(int i = 0; i < parts.length; i++){
+			String part = parts[i];
+			int dash = part.indexOf('-');
+			int first = Integer.parseInt(dash < 0 ? part : part.substring(0, dash)); //Throws exception if non-number
+			int last = dash < 0 ? first : dash == part.length() - 1 ? Integer.MAX_VALUE : Integer.parseInt(part.substring(dash + 1));
+			if(first < 1 || last < first){ //1-based, ranges not reversed
+				throw new TextToolException(ErrorCode.OUT_OF_RANGE, "--fields " + list);
+			}
+			ranges[i] = (long) first << 32 | last;
+		}
+		//Sorted by first field, then overlapping and adjacent ranges merged
+		Arrays.sort(ranges);
+		int[] merged = new int[2 * ranges.length];
+		int count = 0;
+		for(long range : ranges){
+			int first = (int) (range >>> 32);
+			int last = (int) range;
+			if(count > 0 && (long) merged[count - 1] + 1 >= first){
+				merged[count - 1] = Math.max(merged[count - 1], last);
+			}
+			else {
+				merged[count++] = first;
+				merged[count++] = last;
+			}
+		}
+		return Arrays.copyOf(merged, count);
+	}
+
+	/**
+	 * Parses a delimiter: a single char, or "\t" for a tab.
+	 */
+	static char parseDelimiter(String delimiter) throws TextToolException {
+		if(delimiter.equals("\\t")){
+			return '\t';
+		}
+		if(delimiter.length() != 1){
+			throw new TextToolException(ErrorCode.INVALID_VALUE, "--delimiter " + delimiter);
+		}
+		return delimiter.charAt(0);
+	}
+}
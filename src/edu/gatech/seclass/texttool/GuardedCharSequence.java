@@ -0,0 +1,70 @@
+package edu.gatech.seclass.texttool;
+
+/**
+ * Wraps a line for regex matching and counts character reads. Catastrophic
+ * backtracking shows up as reads growing far faster than the line, so once
+ * they pass READS_PER_CHAR per character (plus a floor for short lines) the
+ * match is abandoned with a {@link RegexTimeoutException}. On very long lines
+ * that would allow hours of backtracking, so the budget is capped at
+ * MAX_BUDGET reads, about a second: still ample for a linear match of a line
+ * tens of millions of chars long.
+ */
+final class GuardedCharSequence implements CharSequence {
+	static final long READS_PER_CHAR = 10_000;
+	static final long MIN_BUDGET = 1_000_000;
+	static final long MAX_BUDGET = 100_000_000;
+
+	private CharSequence text;
+	private int offset;
+	private int length;
+	private long budget;
+
+	/**
+	 * Points the guard at a new line and resets its read budget.
+	 */
+	GuardedCharSequence reset(CharSequence text){
+		return reset(text, 0, text.length());
+	}
+
+	/**
+	 * Points the guard at text[start, end), which then reads as the whole sequence.
+	 */
+	GuardedCharSequence reset(CharSequence text, int start, int end){
+		this.text = text;
+		this.offset = start;
+		this.length = end - start;
+		this.budget = Math.min(MAX_BUDGET, Math.max(MIN_BUDGET, length * READS_PER_CHAR));
+		return this;
+	}
+
+	@Override
+	public char charAt(int index){
+		if(--budget < 0){
+			throw new RegexTimeoutException();
+		}
+		return text.charAt(offset + index);
+	}
+
+	@Override
+	public int length(){
+		return length;
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end){
+		return text.subSequence(offset + start, offset + end);
+	}
+
+	@Override
+	public String toString(){
+		return text.subSequence(offset, offset + length).toString();
+	}
+
+	static final class RegexTimeoutException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		RegexTimeoutException(){
+			super("regular expression backtracked past its budget", null, false, false);
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package edu.gatech.seclass.texttool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+final class GzipCodec implements Codec {
+	@Override
+	public boolean matches(byte[] header, int length){
+		return length >= 2 && (header[0] & 0xFF) == 0x1F && (header[1] & 0xFF) == 0x8B;
+	}
+
+	@Override
+	public String extension(){
+		return ".gz";
+	}
+
+	@Override
+	public InputStream decompress(InputStream in) throws IOException {
+		return new GZIPInputStream(in, LineReader.CHUNK_SIZE);
+	}
+
+	@Override
+	public OutputStream compress(OutputStream out) throws IOException {
+		return new GZIPOutputStream(out, LineReader.CHUNK_SIZE);
+	}
+}
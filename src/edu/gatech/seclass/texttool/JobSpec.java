@@ -0,0 +1,248 @@
+package edu.gatech.seclass.texttool;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * An ordered list of operations read from a job file, one per line:
+ *
+ *   # comment
+ *   replace [-i] OLD NEW
+ *   regex [-i] PATTERN REPLACEMENT
+ *   prefix TEXT
+ *   encode N
+ *   --plugin-flag PARAMETERS...
+ *   output FILE
+ *
+ * Parameters are separated by whitespace; double quotes keep spaces and
+ * allow \" \\ \t and \n escapes. Operations may repeat and run in the order
+ * given, all fused into one {@link TransformChain}, so a job of any length
+ * still reads and writes the file once.
+ *
+ * Each output line starts a section writing FILE with the operations that
+ * follow it, after any listed before the first section. All outputs are
+ * written from the same read of the input.
+ */
+final class JobSpec {
+	private final List<Step> steps = new ArrayList<Step>();
+	private final List<Path> outputs = new ArrayList<Path>();
+	private final List<List<Step>> sections = new ArrayList<List<Step>>();
+
+	private JobSpec(){
+	}
+
+	/**
+	 * Reads and validates a job file.
+	 */
+	static JobSpec parse(Path file) throws IOException, TextToolException {
+		JobSpec job = new JobSpec();
+		List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+		for(int i = 0; i < lines.size(); i++){
+			List<String> tokens = tokenize(lines.get(i), i + 1);
+			if(tokens.isEmpty() || tokens.get(0).startsWith("#")){
+				continue;
+			}
+			if(tokens.get(0).equals("output")){
+				job.addOutput(tokens, i + 1);
+				continue;
+			}
+			Step step = Step.parse(tokens, i + 1);
+			if(job.sections.isEmpty()){
+				job.steps.add(step);
+			}
+			else {
+				job.sections.get(job.sections.size() - 1).add(step);
+			}
+		}
+		return job;
+	}
+
+	/**
+	 * Creates fresh transforms for every step, in order.
+	 */
+	List<LineTransform> transforms(){
+		return create(steps, new ArrayList<Step>());
+	}
+
+	/**
+	 * The files named by output sections, in order; empty without any.
+	 */
+	List<Path> outputs(){
+		return outputs;
+	}
+
+	/**
+	 * Creates fresh transforms for the steps before the first section, then
+	 * those of the given output's section.
+	 */
+	List<LineTransform> transforms(int output){
+		return create(steps, sections.get(output));
+	}
+
+	private void addOutput(List<String> tokens, int lineNumber) throws TextToolException {
+		String where = "--job line " + lineNumber + ": output";
+		if(tokens.size() != 2){
+			throw new TextToolException(ErrorCode.PARAMETER_COUNT, where);
+		}
+		if(tokens.get(1).isEmpty()){
+			throw new TextToolException(ErrorCode.INVALID_VALUE, where);
+		}
+		Path file = Paths.get(tokens.get(1));
+		if(outputs.contains(file)){ //Each file is written once
+			throw new TextToolException(ErrorCode.INVALID_VALUE, where + " " + file + " is listed twice");
+		}
+		outputs.add(file);
+		sections.add(new ArrayList<Step>());
+	}
+
+	private static List<LineTransform> create(List<Step> first, List<Step> then){
+		List<LineTransform> transforms = new ArrayList<LineTransform>(first.size() + then.size());
+		for(Step step : first){
+			transforms.add(step.create());
+		}
+		for(Step step : then){
+			transforms.add(step.create());
+		}
+		return transforms;
+	}
+
+	static List<String> tokenize(String line, int lineNumber) throws TextToolException {
+		List<String> tokens = new ArrayList<String>();
+		StringBuilder token = new StringBuilder();
+		int i = 0;
+		while(i < line.length()){
+			char c = line.charAt(i);
+			if(Character.isWhitespace(c)){
+				i++;
+				continue;
+			}
+			token.setLength(0);
+			if(c == '"'){
+				i++;
+				while(true){
+					if(i >= line.length()){
+						throw new TextToolException(ErrorCode.INVALID_VALUE, "--job line " + lineNumber + ": unclosed quote");
+					}
+					c = line.charAt(i++);
+					if(c == '"'){
+						break;
+					}
+					if(c == '\\' && i < line.length()){
+						c = line.charAt(i++);
+						c = c == 't' ? '\t' : c == 'n' ? '\n' : c;
+					}
+					token.append(c);
+				}
+			}
+			else {
+				while(i < line.length() && !Character.isWhitespace(line.charAt(i))){
+					token.append(line.charAt(i++));
+				}
+			}
+			tokens.add(token.toString());
+		}
+		return tokens;
+	}
+
+	private static final class Step {
+		final String name;
+		final boolean caseInsensitive;
+		final List<String> parameters;
+		final Operation plugin;
+
+		private Step(String name, boolean caseInsensitive, List<String> parameters, Operation plugin){
+			this.name = name;
+			this.caseInsensitive = caseInsensitive;
+			this.parameters = parameters;
+			this.plugin = plugin;
+		}
+
+		static Step parse(List<String> tokens, int lineNumber) throws TextToolException {
+			String name = tokens.get(0);
+			String where = "--job line " + lineNumber + ": " + name;
+			int first = 1;
+			boolean caseInsensitive = false;
+			if((name.equals("replace") || name.equals("regex")) && tokens.size() > 1 && tokens.get(1).equals("-i")){
+				caseInsensitive = true;
+				first = 2;
+			}
+			List<String> parameters = new ArrayList<String>(tokens.subList(first, tokens.size()));
+			Operation plugin = null;
+			int count;
+			switch(name){
+				case "replace":
+				case "regex":
+					count = 2;
+					break;
+				case "prefix":
+				case "encode":
+					count = 1;
+					break;
+				default:
+					plugin = Operations.forFlag(name);
+					if(plugin == null){
+						throw new TextToolException(ErrorCode.INVALID_VALUE, where + " is not an operation");
+					}
+					count = plugin.parameterCount();
+			}
+			if(parameters.size() != count){
+				throw new TextToolException(ErrorCode.PARAMETER_COUNT, where);
+			}
+
+			Step step = new Step(name, caseInsensitive, parameters, plugin);
+			step.validate(where);
+			return step;
+		}
+
+		//Same rules as the matching command-line options
+		private void validate(String where) throws TextToolException {
+			switch(name){
+				case "replace":
+				case "regex":
+				case "prefix":
+					if(parameters.get(0).isEmpty()){
+						throw new TextToolException(ErrorCode.INVALID_VALUE, where);
+					}
+					if(name.equals("regex")){
+						Pattern pattern = PatternCache.compile(parameters.get(0), caseInsensitive ? Pattern.CASE_INSENSITIVE : 0);
+						RegexReplaceTransform.checkReplacement(pattern, parameters.get(1));
+					}
+					break;
+				case "encode":
+					try {
+						EncodeTransform.parseShift(parameters.get(0));
+					} catch (NumberFormatException e) {
+						throw new TextToolException(ErrorCode.INVALID_NUMBER, where + " " + parameters.get(0));
+					}
+					break;
+				default:
+					try {
+						plugin.validate(parameters);
+					} catch (Exception e) {
+						throw new TextToolException(ErrorCode.INVALID_VALUE, where + ": " + e.getMessage());
+					}
+			}
+		}
+
+		LineTransform create(){
+			switch(name){
+				case "replace":
+					return new ReplaceTransform(parameters.get(0), parameters.get(1), caseInsensitive);
+				case "regex":
+					return new RegexReplaceTransform(parameters.get(0), parameters.get(1), caseInsensitive);
+				case "prefix":
+					return new PrefixTransform(parameters.get(0));
+				case "encode":
+					return new EncodeTransform(EncodeTransform.parseShift(parameters.get(0)));
+				default:
+					return plugin.create(parameters);
+			}
+		}
+	}
+}
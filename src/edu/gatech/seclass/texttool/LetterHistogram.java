@@ -0,0 +1,98 @@
+package edu.gatech.seclass.texttool;
+
+import java.io.PrintStream;
+import java.nio.CharBuffer;
+import java.util.Arrays;
+
+/**
+ * Counts the letters A-Z, case folded, of the lines it receives, then scores
+ * every -c shift by how English the text would read after it. The score is
+ * the chi-squared distance between the shifted letter counts and those
+ * expected from English letter frequencies, so the lowest score wins. One
+ * scan of the input covers all 26 keys.
+ */
+final class LetterHistogram implements LineSink {
+	//English letter frequencies, a to z, in percent
+	private static final double[] ENGLISH = {
+		8.167, 1.492, 2.782, 4.253, 12.702, 2.228, 2.015, 6.094, 6.966, 0.153, 0.772, 4.025, 2.406,
+		6.749, 7.507, 1.929, 0.095, 5.987, 6.327, 9.056, 2.758, 0.978, 2.360, 0.150, 1.974, 0.074
+	};
+	//Letter index of each ASCII char, or -1
+	private static final byte[] LETTER = new byte[128];
+
+	static {
+		Arrays.fill(LETTER, (byte) -1);
+		for(int i = 0; i < 26; i++){
+			LETTER['a' + i] = (byte) i;
+			LETTER['A' + i] = (byte) i;
+		}
+	}
+
+	private final long[] counts = new long[26];
+
+	@Override
+	public void accept(CharSequence line, int tag){
+		if(line instanceof CharBuffer && ((CharBuffer) line).hasArray()){
+			CharBuffer buf = (CharBuffer) line;
+			char[] chars = buf.array();
+			for(int i = buf.arrayOffset() + buf.position(), end = buf.arrayOffset() + buf.limit(); i < end; i++){
+				count(chars[i]);
+			}
+		}
+		else {
+			for(int i = 0; i < line.length(); i++){
+				count(line.charAt(i));
+			}
+		}
+	}
+
+	/**
+	 * Scores shift, the -c value that would be applied to the text. Lower is
+	 * more English.
+	 */
+	double score(int shift){
+		long total = 0;
+		for(long count : counts){
+			total += count;
+		}
+		double score = 0;
+		for(int letter = 0; letter < 26; letter++){
+			double expected = total * ENGLISH[(letter + shift) % 26] / 100;
+			double difference = counts[letter] - expected;
+			score += expected == 0 ? 0 : difference * difference / expected;
+		}
+		return score;
+	}
+
+	/**
+	 * Prints the letter count, the best shift, then every shift from best to
+	 * worst, one "name: value" pair per line.
+	 */
+	void report(PrintStream out){
+		Integer[] shifts = new Integer[26];
+		final double[] scores = new double[26];
+		long total = 0;
+		for(int i = 0; i < 26; i++){
+			shifts[i] = i;
+			scores[i] = score(i);
+			total += counts[i];
+		}
+		Arrays.sort(shifts, new java.util.Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b){
+				return Double.compare(scores[a], scores[b]);
+			}
+		});
+		out.println("letters: " + total);
+		out.println("best shift: " + shifts[0]);
+		for(int shift : shifts){
+			out.println("shift " + shift + ": " + Math.round(scores[shift] * 10) / 10.0);
+		}
+	}
+
+	private void count(char c){
+		if(c < LETTER.length && LETTER[c] >= 0){
+			counts[LETTER[c]]++;
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package edu.gatech.seclass.texttool;
+
+/**
+ * How output lines are terminated, chosen with --eol. Input terminators are
+ * already known from the newline scan, so no mode needs a normalization pass.
+ */
+enum LineEnding {
+	//Platform separator, the behavior without --eol
+	SYSTEM,
+	//Each line keeps the terminator it had in the input, byte for byte
+	PRESERVE,
+	LF,
+	CRLF,
+	//Whatever terminator the first line uses
+	AUTO;
+
+	static LineEnding parse(String name) throws TextToolException {
+		switch(name){
+			case "preserve": return PRESERVE;
+			case "lf": return LF;
+			case "crlf": return CRLF;
+			case "auto": return AUTO;
+			default: throw new TextToolException(ErrorCode.INVALID_VALUE, "--eol " + name);
+		}
+	}
+
+	/**
+	 * Returns the separator every line gets, or null when it depends on the input.
+	 */
+	String fixedSeparator(){
+		switch(this){
+			case SYSTEM: return System.lineSeparator();
+			case LF: return "\n";
+			case CRLF: return "\r\n";
+			default: return null;
+		}
+	}
+
+	/**
+	 * Returns the text of an input terminator of the given length in bytes, as
+	 * reported by {@link LineReader#terminator()}.
+	 */
+	static String separatorOf(int terminator){
+		switch(terminator){
+			case 0: return "";
+			case 1: return "\n";
+			default: return "\r\n";
+		}
+	}
+}
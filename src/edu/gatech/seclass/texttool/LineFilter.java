@@ -0,0 +1,85 @@
+package edu.gatech.seclass.texttool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps lines containing a match of any include token (all lines when there
+ * are none) and of none of the exclude tokens. Runs on the decoded input line
+ * before any transform, so a rejected line costs one scan and no allocation.
+ * Tokens are regular expressions; those without metacharacters match only
+ * themselves, so they are searched with {@link LiteralMatcher}, the engine
+ * behind -r, instead.
+ */
+final class LineFilter {
+	private static final String METACHARACTERS = "\\^$.|?*+()[]{}";
+
+	private final LiteralMatcher[] literalIncludes;
+	private final LiteralMatcher[] literalExcludes;
+	private final Matcher[] regexIncludes;
+	private final Matcher[] regexExcludes;
+	private final GuardedCharSequence guarded = new GuardedCharSequence();
+
+	LineFilter(List<String> includes, List<String> excludes, boolean caseInsensitive){
+		literalIncludes = literals(includes, caseInsensitive);
+		literalExcludes = literals(excludes, caseInsensitive);
+		regexIncludes = matchers(includes, caseInsensitive);
+		regexExcludes = matchers(excludes, caseInsensitive);
+	}
+
+	//True when token, as a regular expression, matches only its own text
+	static boolean isLiteral(String token){
+		for(int i = 0; i < token.length(); i++){
+			if(METACHARACTERS.indexOf(token.charAt(i)) >= 0){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	boolean accept(CharSequence line){
+		boolean included = literalIncludes.length == 0 && regexIncludes.length == 0;
+		for(int i = 0; !included && i < literalIncludes.length; i++){
+			included = literalIncludes[i].indexOf(line, 0) >= 0;
+		}
+		for(int i = 0; !included && i < regexIncludes.length; i++){
+			included = regexIncludes[i].reset(guarded.reset(line)).find();
+		}
+		if(!included){
+			return false;
+		}
+		for(LiteralMatcher exclude : literalExcludes){
+			if(exclude.indexOf(line, 0) >= 0){
+				return false;
+			}
+		}
+		for(Matcher exclude : regexExcludes){
+			if(exclude.reset(guarded.reset(line)).find()){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static LiteralMatcher[] literals(List<String> tokens, boolean caseInsensitive){
+		List<LiteralMatcher> matchers = new ArrayList<LiteralMatcher>();
+		for(String token : tokens){
+			if(isLiteral(token)){
+				matchers.add(new LiteralMatcher(token, caseInsensitive));
+			}
+		}
+		return matchers.toArray(new LiteralMatcher[0]);
+	}
+
+	private static Matcher[] matchers(List<String> tokens, boolean caseInsensitive){
+		List<Matcher> matchers = new ArrayList<Matcher>();
+		for(String token : tokens){
+			if(!isLiteral(token)){
+				matchers.add(PatternCache.compile(token, caseInsensitive ? Pattern.CASE_INSENSITIVE : 0).matcher(""));
+			}
+		}
+		return matchers.toArray(new Matcher[0]);
+	}
+}
@@ -0,0 +1,177 @@
+package edu.gatech.seclass.texttool;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Maps line numbers to byte offsets so a range of lines can be read without
+ * scanning the file from the start. The start of every STRIDE-th line is kept
+ * as a packed long[]; reaching any other line costs at most STRIDE - 1 line
+ * skips from the nearest checkpoint.
+ *
+ * The index is saved next to the input as a "&lt;name&gt;.lineidx" sidecar and
+ * reused for as long as the input's size and modification time are unchanged.
+ * It only covers the file as far as any run has asked for: a request past its
+ * last checkpoint scans on from there and saves the longer index.
+ */
+final class LineIndex {
+	static final int STRIDE = 256;
+	static final String SUFFIX = ".lineidx";
+
+	private static final long MAGIC = 0x54544C494458L; //"TTLIDX"
+	private static final int HEADER_LONGS = 5;
+
+	private final long[] checkpoints;
+	private final long lineCount;		//-1 until indexed to the end
+
+	private LineIndex(long[] checkpoints, long lineCount){
+		this.checkpoints = checkpoints;
+		this.lineCount = lineCount;
+	}
+
+	/**
+	 * Returns an index for file reaching at least the checkpoint of line,
+	 * loading its sidecar when still current and long enough, and otherwise
+	 * extending it, or building it afresh, and saving it where possible.
+	 */
+	static LineIndex forFile(Path file, long line) throws IOException {
+		Path sidecar = file.resolveSibling(file.getFileName() + SUFFIX);
+		long size = Files.size(file);
+		long modified = Files.getLastModifiedTime(file).toMillis();
+
+		LineIndex loaded = Files.exists(sidecar) ? load(sidecar, size, modified) : null;
+		if(loaded != null && loaded.covers(line)){
+			return loaded;
+		}
+
+		//Line 0 always starts at offset 0
+		LineIndex built = (loaded != null ? loaded : new LineIndex(new long[] {0}, -1)).extend(file, line);
+		//Never overwrite a file that isn't one of our sidecars
+		if(!Files.exists(sidecar) || isSidecar(sidecar)){
+			try {
+				built.save(sidecar, size, modified);
+			}
+			catch(IOException e){
+				//Read-only directory; the in-memory index still serves this run
+			}
+		}
+		return built;
+	}
+
+	//Total number of lines, counting a final line without a terminator, or -1 if not indexed that far
+	long lineCount(){
+		return lineCount;
+	}
+
+	//Zero-based number of the checkpointed line at or before line
+	long checkpointLine(long line){
+		return Math.min(line / STRIDE, checkpoints.length - 1) * STRIDE;
+	}
+
+	//Byte offset of checkpointLine(line)
+	long checkpointOffset(long line){
+		return checkpoints[(int) Math.min(line / STRIDE, checkpoints.length - 1)];
+	}
+
+	//True when the checkpoint at or before line is known
+	private boolean covers(long line){
+		return lineCount >= 0 || line / STRIDE < checkpoints.length;
+	}
+
+	//Scans on from the last checkpoint until line's checkpoint is found or the file ends
+	private LineIndex extend(Path file, long line) throws IOException {
+		long target = line / STRIDE;
+		int count = checkpoints.length;
+		long[] grown = Arrays.copyOf(checkpoints, Math.max(16, count * 2));
+		long lines = (long) (count - 1) * STRIDE;
+		long position = grown[count - 1];
+		boolean partial = false;
+
+		ByteBuffer buf = ByteBuffer.allocate(LineReader.CHUNK_SIZE * 16);
+		int[] ends = new int[4096];
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			channel.position(position);
+			while(channel.read(buf) >= 0){
+				int limit = buf.position();
+				int from = 0;
+				int found;
+				while((found = LineScanner.scan(buf, from, limit, ends)) > 0){
+					for(int i = 0; i < found; i++){
+						lines++;
+						if(lines % STRIDE == 0){
+							if(count == grown.length){
+								grown = Arrays.copyOf(grown, count * 2);
+							}
+							grown[count++] = position + ends[i] + 1;
+							if(count > target){
+								return new LineIndex(Arrays.copyOf(grown, count), -1);
+							}
+						}
+					}
+					from = ends[found - 1] + 1;
+				}
+				partial = from < limit;
+				position += limit;
+				buf.clear();
+			}
+		}
+		if(partial){
+			lines++;
+		}
+		return new LineIndex(Arrays.copyOf(grown, count), lines);
+	}
+
+	private static LineIndex load(Path sidecar, long size, long modified) throws IOException {
+		try(FileChannel channel = FileChannel.open(sidecar, StandardOpenOption.READ)){
+			long bytes = channel.size();
+			if(bytes < HEADER_LONGS * Long.BYTES || bytes % Long.BYTES != 0){
+				return null;
+			}
+			ByteBuffer buf = ByteBuffer.allocate((int) bytes);
+			while(buf.hasRemaining() && channel.read(buf) >= 0){
+				//Keep reading until full
+			}
+			buf.flip();
+			LongBuffer longs = buf.asLongBuffer();
+			if(longs.get(0) != MAGIC || longs.get(1) != size || longs.get(2) != modified ||
+					longs.get(3) != STRIDE || longs.remaining() == HEADER_LONGS){
+				return null;
+			}
+			long lines = longs.get(4);
+			long[] checkpoints = new long[longs.remaining() - HEADER_LONGS];
+			longs.position(HEADER_LONGS);
+			longs.get(checkpoints);
+			return new LineIndex(checkpoints, lines);
+		}
+	}
+
+	private static boolean isSidecar(Path sidecar){
+		try(FileChannel channel = FileChannel.open(sidecar, StandardOpenOption.READ)){
+			ByteBuffer magic = ByteBuffer.allocate(Long.BYTES);
+			channel.read(magic);
+			return !magic.hasRemaining() && magic.getLong(0) == MAGIC;
+		}
+		catch(IOException e){
+			return false;
+		}
+	}
+
+	private void save(Path sidecar, long size, long modified) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate((HEADER_LONGS + checkpoints.length) * Long.BYTES);
+		buf.putLong(MAGIC).putLong(size).putLong(modified).putLong(STRIDE).putLong(lineCount);
+		buf.asLongBuffer().put(checkpoints);
+		buf.clear();
+		try(FileChannel channel = FileChannel.open(sidecar, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)){
+			while(buf.hasRemaining()){
+				channel.write(buf);
+			}
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package edu.gatech.seclass.texttool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Streams lines out of a channel. Input is read in large chunks, split with
+ * {@link LineScanner} and only decoded on demand, one line at a time, into a
+ * reused char buffer. Lines end at "\n" or "\r\n"; a final line without a
+ * terminator is still returned.
+ *
+ * Pure ASCII lines of UTF-8 or ASCII input, and every line of ISO-8859-1
+ * input, are widened byte for byte instead of going through the decoder.
+ */
+final class LineReader implements Closeable {
+	static final int CHUNK_SIZE = 1 << 16;
+
+	private final ReadableByteChannel channel;
+	private final CharsetDecoder decoder;
+	private final boolean asciiWidens;		//ASCII bytes decode to the same chars
+	private final boolean allWiden;		//Every byte decodes to the same char
+	private final int[] ends = new int[1024];
+	private ByteBuffer buf;
+	private ByteBuffer view;
+	private CharBuffer chars = BufferPool.chars(256);
+
+	private int filled;		//Bytes of buf holding input
+	private int scanFrom;		//First byte not yet scanned for newlines
+	private int lineStart;		//Start of the next unreturned line
+	private int endCount;
+	private int endIndex;
+	private boolean eof;
+	private boolean unterminated;
+
+	private int start;
+	private int end;
+	private int terminator;
+
+	LineReader(ReadableByteChannel channel, Charset charset){
+		this(channel, charset, CodingErrorAction.REPORT);
+	}
+
+	LineReader(ReadableByteChannel channel, Charset charset, CodingErrorAction malformed){
+		this.channel = channel;
+		this.decoder = charset.newDecoder()
+				.onMalformedInput(malformed)
+				.onUnmappableCharacter(malformed);
+		this.allWiden = charset.equals(StandardCharsets.ISO_8859_1);
+		this.asciiWidens = allWiden || charset.equals(StandardCharsets.UTF_8) || charset.equals(StandardCharsets.US_ASCII);
+		this.buf = BufferPool.bytes(CHUNK_SIZE);
+		this.view = buf.duplicate();
+	}
+
+	/**
+	 * Advances to the next line. Returns false once the input is exhausted.
+	 */
+	boolean next() throws IOException {
+		while(true){
+			if(endIndex < endCount){
+				int newline = ends[endIndex++];
+				start = lineStart;
+				end = LineScanner.contentEnd(buf, lineStart, newline);
+				terminator = newline + 1 - end;
+				lineStart = newline + 1;
+				return true;
+			}
+			if(scanFrom < filled){
+				endIndex = 0;
+				endCount = LineScanner.scan(buf, scanFrom, filled, ends);
+				scanFrom = endCount > 0 ? ends[endCount - 1] + 1 : filled;
+				continue;
+			}
+			if(eof){
+				if(lineStart < filled){
+					start = lineStart;
+					end = filled;
+					terminator = 0;
+					unterminated = true;
+					lineStart = filled;
+					return true;
+				}
+				return false;
+			}
+			fill();
+		}
+	}
+
+	/**
+	 * Decodes the current line. The returned buffer is reused by the next call.
+	 */
+	CharBuffer line() throws CharacterCodingException {
+		int length = end - start;
+		if(allWiden || (asciiWidens && LineScanner.isAscii(buf, start, end))){
+			return widen(length);
+		}
+		int needed = (int) Math.ceil(length * (double) decoder.maxCharsPerByte());
+		if(chars.capacity() < needed){
+			growChars(needed);
+		}
+		chars.clear();
+		view.limit(end);
+		view.position(start);
+		decoder.reset();
+		CoderResult result = decoder.decode(view, chars, true);
+		if(result.isError()){
+			result.throwException();
+		}
+		decoder.flush(chars);
+		chars.flip();
+		return chars;
+	}
+
+	//Raw bytes of the current line, valid until the next call to next()
+	ByteBuffer buffer(){
+		return buf;
+	}
+
+	int start(){
+		return start;
+	}
+
+	int end(){
+		return end;
+	}
+
+	//Length in bytes of the current line's terminator: 0, 1 for "\n" or 2 for "\r\n"
+	int terminator(){
+		return terminator;
+	}
+
+	//True once the final line has been returned and it had no terminator
+	boolean unterminated(){
+		return unterminated;
+	}
+
+	/**
+	 * Closes the channel and returns the buffers to the {@link BufferPool}, so
+	 * the last line returned may no longer be used.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+		if(buf != null){
+			BufferPool.release(buf);
+			BufferPool.release(chars);
+			buf = null;
+			view = null;
+			chars = null;
+		}
+	}
+
+	private void growChars(int needed){
+		BufferPool.release(chars);
+		chars = BufferPool.chars(Math.max(needed, chars.capacity() * 2));
+	}
+
+	private CharBuffer widen(int length){
+		if(chars.capacity() < length){
+			growChars(length);
+		}
+		byte[] bytes = buf.array();
+		char[] dest = chars.array();
+		for(int i = 0, j = buf.arrayOffset() + start; i < length; i++, j++){
+			dest[i] = (char) (bytes[j] & 0xFF);
+		}
+		chars.clear();
+		chars.limit(length);
+		return chars;
+	}
+
+	private void fill() throws IOException {
+		//Move the unfinished line to the front, growing when it fills the whole buffer
+		buf.limit(filled);
+		buf.position(lineStart);
+		buf.compact();
+		filled -= lineStart;
+		scanFrom -= lineStart;
+		lineStart = 0;
+		if(filled == buf.capacity()){
+			ByteBuffer grown = BufferPool.bytes(buf.capacity() * 2);
+			buf.flip();
+			grown.put(buf);
+			BufferPool.release(buf);
+			buf = grown;
+			view = buf.duplicate();
+		}
+
+		buf.limit(buf.capacity());
+		buf.position(filled);
+		int read = channel.read(buf);
+		if(read < 0){
+			eof = true;
+		}
+		else {
+			filled += read;
+		}
+	}
+}
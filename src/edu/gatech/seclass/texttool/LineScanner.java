@@ -0,0 +1,108 @@
+package edu.gatech.seclass.texttool;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Locates line feeds in byte buffers eight bytes at a time (SWAR).
+ * Every ASCII compatible charset encodes '\n' as the single byte 0x0A, so
+ * lines can be split before anything is decoded.
+ */
+final class LineScanner {
+	private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+	private static final long LOW_SEVEN = 0x7F7F7F7F7F7F7F7FL;
+	private static final long HIGH_BITS = 0x8080808080808080L;
+
+	private LineScanner(){
+	}
+
+	/**
+	 * Stores the position of every '\n' in buf[from, to) into ends, stopping
+	 * early once ends is full. Returns the number of positions stored.
+	 */
+	static int scan(ByteBuffer buf, int from, int to, int[] ends){
+		boolean little = buf.order() == ByteOrder.LITTLE_ENDIAN;
+		int count = 0;
+		int i = from;
+
+		for(; i + 8 <= to; i += 8){
+			long found = newlineBits(buf.getLong(i));
+			while(found != 0){
+				if(count == ends.length){
+					return count;
+				}
+				if(little){
+					ends[count++] = i + (Long.numberOfTrailingZeros(found) >>> 3);
+					found &= found - 1;
+				}
+				else {
+					int zeros = Long.numberOfLeadingZeros(found);
+					ends[count++] = i + (zeros >>> 3);
+					found &= ~(Long.MIN_VALUE >>> zeros);
+				}
+			}
+		}
+		for(; i < to && count < ends.length; i++){
+			if(buf.get(i) == '\n'){
+				ends[count++] = i;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the position of the first '\n' in buf[from, to), or -1.
+	 */
+	static int indexOf(ByteBuffer buf, int from, int to){
+		boolean little = buf.order() == ByteOrder.LITTLE_ENDIAN;
+		int i = from;
+
+		for(; i + 8 <= to; i += 8){
+			long found = newlineBits(buf.getLong(i));
+			if(found != 0){
+				return i + ((little ? Long.numberOfTrailingZeros(found) : Long.numberOfLeadingZeros(found)) >>> 3);
+			}
+		}
+		for(; i < to; i++){
+			if(buf.get(i) == '\n'){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the end of the line content terminated by the '\n' at newline,
+	 * dropping the '\r' of a "\r\n" pair.
+	 */
+	static int contentEnd(ByteBuffer buf, int lineStart, int newline){
+		if(newline > lineStart && buf.get(newline - 1) == '\r'){
+			return newline - 1;
+		}
+		return newline;
+	}
+
+	/**
+	 * Returns true when no byte of buf[from, to) has its high bit set.
+	 */
+	static boolean isAscii(ByteBuffer buf, int from, int to){
+		int i = from;
+		for(; i + 8 <= to; i += 8){
+			if((buf.getLong(i) & HIGH_BITS) != 0){
+				return false;
+			}
+		}
+		for(; i < to; i++){
+			if(buf.get(i) < 0){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// Sets the high bit of every byte of word that equals '\n'. Exact per byte, so no borrow false positives
+	private static long newlineBits(long word){
+		long x = word ^ NEWLINES;
+		return ~(((x & LOW_SEVEN) + LOW_SEVEN) | x | LOW_SEVEN);
+	}
+}
@@ -0,0 +1,11 @@
+package edu.gatech.seclass.texttool;
+
+import java.io.IOException;
+
+/**
+ * Receives lines at the end of the pipeline, each with its tag (the input
+ * terminator, as reported by {@link LineReader#terminator()}).
+ */
+interface LineSink {
+	void accept(CharSequence line, int tag) throws IOException;
+}
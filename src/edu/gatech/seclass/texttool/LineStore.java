@@ -0,0 +1,251 @@
+package edu.gatech.seclass.texttool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds lines for operations that need the whole input at once. Lines are
+ * kept encoded, outside the Java heap, in fixed-size direct buffer blocks
+ * addressed by a packed long[] of (block, position) plus an int[] of lengths,
+ * so each line costs its encoded bytes and 12 bytes of index rather than a
+ * String object. Once memoryLimit bytes of blocks exist, further blocks are
+ * mapped from a temporary file instead.
+ *
+ * Each line also carries a small tag, e.g. its input terminator.
+ */
+final class LineStore implements Closeable {
+	static final int BLOCK_SIZE = 1 << 20;
+
+	private final long memoryLimit;
+	private final CharsetEncoder encoder;
+	private final CharsetDecoder decoder;
+	private final List<ByteBuffer> blocks = new ArrayList<ByteBuffer>();
+	private final List<ByteBuffer> pooled = new ArrayList<ByteBuffer>();
+	private ByteBuffer current;
+	private long allocated;
+
+	private long[] positions = new long[1024];
+	private int[] lengths = new int[1024];
+	private byte[] tags = new byte[1024];
+	private int size;
+
+	private Path spillFile;
+	private FileChannel spillChannel;
+	private long spillSize;
+
+	private char[] chars = new char[256];
+	private CharBuffer decoded = CharBuffer.allocate(256);
+
+	LineStore(long memoryLimit, Charset charset){
+		this.memoryLimit = memoryLimit;
+		this.encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.decoder = charset.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
+	}
+
+	//Direct memory defaults to the heap size; leave half of it for everything else
+	static long defaultMemoryLimit(){
+		return Runtime.getRuntime().maxMemory() / 2;
+	}
+
+	/**
+	 * Appends line, returning its index.
+	 */
+	int add(CharSequence line, int tag) throws IOException {
+		int length = line.length();
+		if(chars.length < length){
+			chars = new char[Math.max(length, chars.length * 2)];
+		}
+		LineWriter.copyChars(line, chars);
+
+		int maxBytes = (int) Math.ceil(length * (double) encoder.maxBytesPerChar());
+		ByteBuffer block = blockFor(maxBytes);
+		int start = block.position();
+		encoder.reset();
+		CoderResult result = encoder.encode(CharBuffer.wrap(chars, 0, length), block, true);
+		if(!result.isUnderflow()){
+			result.throwException();
+		}
+		encoder.flush(block);
+		return append(start, block.position() - start, tag);
+	}
+
+	/**
+	 * Appends an already encoded line, src[start, end), returning its index.
+	 */
+	int add(ByteBuffer src, int start, int end, int tag) throws IOException {
+		int length = end - start;
+		ByteBuffer block = blockFor(length);
+		int position = block.position();
+		ByteBuffer bytes = src.duplicate();
+		bytes.limit(end);
+		bytes.position(start);
+		block.put(bytes);
+		return append(position, length, tag);
+	}
+
+	int size(){
+		return size;
+	}
+
+	int tag(int index){
+		return tags[index];
+	}
+
+	/**
+	 * Returns a read-only view of the encoded line. Allocates a view, so hot
+	 * loops should prefer {@link #compare} and {@link #get}.
+	 */
+	ByteBuffer bytes(int index){
+		ByteBuffer view = blocks.get(block(index)).asReadOnlyBuffer();
+		view.limit(offset(index) + lengths[index]);
+		view.position(offset(index));
+		return view;
+	}
+
+	/**
+	 * Decodes the line into a buffer reused by the next call.
+	 */
+	CharBuffer get(int index) throws CharacterCodingException {
+		int length = lengths[index];
+		int needed = (int) Math.ceil(length * (double) decoder.maxCharsPerByte());
+		if(decoded.capacity() < needed){
+			decoded = CharBuffer.allocate(Math.max(needed, decoded.capacity() * 2));
+		}
+		ByteBuffer block = blocks.get(block(index));
+		int offset = offset(index);
+		ByteBuffer in = block.duplicate();
+		in.limit(offset + length);
+		in.position(offset);
+		decoded.clear();
+		decoder.reset();
+		CoderResult result = decoder.decode(in, decoded, true);
+		if(result.isError()){
+			result.throwException();
+		}
+		decoder.flush(decoded);
+		decoded.flip();
+		return decoded;
+	}
+
+	/**
+	 * Compares two lines by their encoded bytes, unsigned. For UTF-8 this is
+	 * code point order.
+	 */
+	int compare(int a, int b){
+		ByteBuffer blockA = blocks.get(block(a));
+		ByteBuffer blockB = blocks.get(block(b));
+		int offsetA = offset(a);
+		int offsetB = offset(b);
+		int lengthA = lengths[a];
+		int lengthB = lengths[b];
+		int common = Math.min(lengthA, lengthB);
+		for(int i = 0; i < common; i++){
+			int cmp = (blockA.get(offsetA + i) & 0xFF) - (blockB.get(offsetB + i) & 0xFF);
+			if(cmp != 0){
+				return cmp;
+			}
+		}
+		return lengthA - lengthB;
+	}
+
+	//True when the lines hold the same bytes
+	boolean sameBytes(int a, int b){
+		return lengths[a] == lengths[b] && compare(a, b) == 0;
+	}
+
+	/**
+	 * Drops the last line added.
+	 */
+	void removeLast(){
+		size--;
+		ByteBuffer block = blocks.get(block(size));
+		if(block == current && offset(size) + lengths[size] == current.position()){
+			current.position(offset(size));
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		//Pooled blocks go back to the pool; mapped ones are released with the buffers themselves
+		for(ByteBuffer block : pooled){
+			BufferPool.release(block);
+		}
+		pooled.clear();
+		blocks.clear();
+		current = null;
+		if(spillChannel != null){
+			spillChannel.close();
+			Files.deleteIfExists(spillFile);
+		}
+	}
+
+	private int block(int index){
+		return (int) (positions[index] >>> 32);
+	}
+
+	private int offset(int index){
+		return (int) positions[index];
+	}
+
+	private int append(int position, int length, int tag){
+		if(size == lengths.length){
+			int capacity = size * 2;
+			long[] grownPositions = new long[capacity];
+			int[] grownLengths = new int[capacity];
+			byte[] grownTags = new byte[capacity];
+			System.arraycopy(positions, 0, grownPositions, 0, size);
+			System.arraycopy(lengths, 0, grownLengths, 0, size);
+			System.arraycopy(tags, 0, grownTags, 0, size);
+			positions = grownPositions;
+			lengths = grownLengths;
+			tags = grownTags;
+		}
+		positions[size] = ((long) (blocks.size() - 1) << 32) | position;
+		lengths[size] = length;
+		tags[size] = (byte) tag;
+		return size++;
+	}
+
+	//Returns the current block once it has room for bytes, starting a new one if not
+	private ByteBuffer blockFor(int bytes) throws IOException {
+		if(current != null && current.remaining() >= bytes){
+			return current;
+		}
+		int capacity = Math.max(BLOCK_SIZE, bytes);
+		if(allocated + capacity <= memoryLimit){
+			current = BufferPool.direct(capacity);
+			capacity = current.capacity();
+			pooled.add(current);
+		}
+		else {
+			if(spillChannel == null){
+				spillFile = Files.createTempFile("texttool", ".lines");
+				spillChannel = FileChannel.open(spillFile, StandardOpenOption.READ, StandardOpenOption.WRITE,
+						StandardOpenOption.DELETE_ON_CLOSE);
+			}
+			current = spillChannel.map(FileChannel.MapMode.READ_WRITE, spillSize, capacity);
+			spillSize += capacity;
+		}
+		allocated += capacity;
+		blocks.add(current);
+		return current;
+	}
+}
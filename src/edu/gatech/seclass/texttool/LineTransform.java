@@ -0,0 +1,43 @@
+package edu.gatech.seclass.texttool;
+
+/**
+ * A per-line text operation. Implementations append their result to a
+ * caller-supplied buffer so a chain of them allocates nothing per line.
+ *
+ * An instance is only ever used by one thread at a time; parallel runs create
+ * one per worker, so implementations may keep scratch state in fields.
+ */
+public interface LineTransform {
+	//See asciiGrowth()
+	int UNPREDICTABLE = Integer.MIN_VALUE;
+
+	/**
+	 * Appends the transformed form of line[start, end) to out. Ranges let
+	 * field mode transform a single column without copying it out first.
+	 */
+	void apply(CharSequence line, int start, int end, StringBuilder out);
+
+	/**
+	 * Appends the transformed form of the whole line to out.
+	 */
+	default void apply(CharSequence line, StringBuilder out){
+		apply(line, 0, line.length(), out);
+	}
+
+	/**
+	 * True when each output line depends only on its input line, never on the
+	 * lines before it, so lines can be transformed in any order.
+	 */
+	default boolean isStateless(){
+		return false;
+	}
+
+	/**
+	 * How many chars every pure ASCII line gains (negative: loses), provided
+	 * the result is pure ASCII too; UNPREDICTABLE when that depends on the
+	 * content. Lets parallel runs size their output before transforming it.
+	 */
+	default int asciiGrowth(){
+		return UNPREDICTABLE;
+	}
+}
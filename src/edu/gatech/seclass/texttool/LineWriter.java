@@ -0,0 +1,238 @@
+package edu.gatech.seclass.texttool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Encodes lines into a large byte buffer and hands it to the channel only
+ * when full, so output costs one write call per chunk rather than per line.
+ *
+ * A line written many times is encoded once, repeated into a chunk-sized
+ * slab, and the slab handed over as many times as needed, several at a time
+ * through one gathering write when the channel supports it.
+ */
+final class LineWriter implements Closeable {
+	//Slabs handed to one gathering write, a megabyte with the default chunk size
+	static final int SLABS_PER_WRITE = 16;
+
+	private final WritableByteChannel channel;
+	private final CharsetEncoder encoder;
+	private ByteBuffer buf = BufferPool.bytes(LineReader.CHUNK_SIZE);
+	private CharBuffer text = BufferPool.chars(256);
+	private ByteBuffer record = BufferPool.bytes(256);
+	private ByteBuffer slab;
+	private final ByteBuffer[] slabs = new ByteBuffer[SLABS_PER_WRITE];
+
+	LineWriter(WritableByteChannel channel, Charset charset){
+		this.channel = channel;
+		this.encoder = charset.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	/**
+	 * Writes line followed by the given separator.
+	 */
+	void write(CharSequence line, String separator) throws IOException {
+		CharBuffer in = fill(line, separator);
+		while(true){
+			CoderResult result = encoder.encode(in, buf, false);
+			if(result.isOverflow()){
+				drain();
+			}
+			else {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Writes line followed by separator, copies times over.
+	 */
+	void write(CharSequence line, String separator, long copies) throws IOException {
+		if(copies == 1){
+			write(line, separator);
+			return;
+		}
+		encodeRecord(line, separator);
+		int length = record.remaining();
+		//Copies that fit go through the buffer as usual
+		while(copies > 0 && buf.remaining() >= length){
+			buf.put(record.duplicate());
+			copies--;
+		}
+		if(copies == 0){
+			return;
+		}
+		drain();
+		int perSlab = Math.max(1, LineReader.CHUNK_SIZE / Math.max(1, length));
+		long fullSlabs = copies / perSlab;
+		if(fullSlabs > 0){
+			fillSlab(perSlab);
+			writeSlabs(fullSlabs);
+		}
+		for(long rest = copies % perSlab; rest > 0; rest--){
+			if(buf.remaining() < length){
+				drain();
+			}
+			if(buf.remaining() < length){
+				//Longer than the whole buffer
+				writeFully(record.duplicate());
+			}
+			else {
+				buf.put(record.duplicate());
+			}
+		}
+	}
+
+	/**
+	 * Pushes everything written so far to the channel without closing it.
+	 */
+	void flush() throws IOException {
+		CharBuffer empty = CharBuffer.allocate(0);
+		while(encoder.encode(empty, buf, true).isOverflow()){
+			drain();
+		}
+		while(encoder.flush(buf).isOverflow()){
+			drain();
+		}
+		drain();
+		encoder.reset();
+	}
+
+	/**
+	 * Returns the buffers to the {@link BufferPool} without flushing; the
+	 * writer may not be used afterwards.
+	 */
+	void release(){
+		if(buf != null){
+			BufferPool.release(buf);
+			BufferPool.release(text);
+			BufferPool.release(record);
+			BufferPool.release(slab);
+			buf = null;
+			text = null;
+			record = null;
+			slab = null;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		}
+		finally {
+			release();
+			channel.close();
+		}
+	}
+
+	//Copies line and separator into the reused text buffer, ready to encode
+	private CharBuffer fill(CharSequence line, String separator){
+		int length = line.length();
+		int total = length + separator.length();
+		if(text.capacity() < total){
+			BufferPool.release(text);
+			text = BufferPool.chars(Math.max(total, text.capacity() * 2));
+		}
+		char[] chars = text.array();
+		copyChars(line, chars);
+		separator.getChars(0, separator.length(), chars, length);
+		text.clear();
+		text.limit(total);
+		return text;
+	}
+
+	//Encodes line and separator into record on their own
+	private void encodeRecord(CharSequence line, String separator) throws IOException {
+		CharBuffer in = fill(line, separator);
+		record.clear();
+		while(encoder.encode(in, record, false).isOverflow()){
+			ByteBuffer grown = BufferPool.bytes(record.capacity() * 2);
+			record.flip();
+			grown.put(record);
+			BufferPool.release(record);
+			record = grown;
+		}
+		record.flip();
+	}
+
+	private void fillSlab(int perSlab){
+		int size = perSlab * record.remaining();
+		if(slab == null || slab.capacity() < size){
+			BufferPool.release(slab);
+			slab = BufferPool.bytes(Math.max(size, LineReader.CHUNK_SIZE));
+		}
+		slab.clear();
+		for(int i = 0; i < perSlab; i++){
+			slab.put(record.duplicate());
+		}
+		slab.flip();
+	}
+
+	private void writeSlabs(long count) throws IOException {
+		if(!(channel instanceof GatheringByteChannel)){
+			for(long i = 0; i < count; i++){
+				writeFully(slab.duplicate());
+			}
+			return;
+		}
+		GatheringByteChannel gathering = (GatheringByteChannel) channel;
+		while(count > 0){
+			int batch = (int) Math.min(count, SLABS_PER_WRITE);
+			for(int i = 0; i < batch; i++){
+				slabs[i] = slab.duplicate();
+			}
+			int first = 0;
+			while(first < batch){
+				gathering.write(slabs, first, batch - first);
+				while(first < batch && !slabs[first].hasRemaining()){
+					first++;
+				}
+			}
+			count -= batch;
+		}
+	}
+
+	private void writeFully(ByteBuffer bytes) throws IOException {
+		while(bytes.hasRemaining()){
+			channel.write(bytes);
+		}
+	}
+
+	private void drain() throws IOException {
+		buf.flip();
+		while(buf.hasRemaining()){
+			channel.write(buf);
+		}
+		buf.clear();
+	}
+
+	//Copies line into dest, using bulk copies for the common CharSequence types
+	static void copyChars(CharSequence line, char[] dest){
+		if(line instanceof String){
+			((String) line).getChars(0, line.length(), dest, 0);
+		}
+		else if(line instanceof StringBuilder){
+			((StringBuilder) line).getChars(0, line.length(), dest, 0);
+		}
+		else if(line instanceof CharBuffer && ((CharBuffer) line).hasArray()){
+			CharBuffer cb = (CharBuffer) line;
+			System.arraycopy(cb.array(), cb.arrayOffset() + cb.position(), dest, 0, cb.remaining());
+		}
+		else {
+			for(int i = 0; i < line.length(); i++){
+				dest[i] = line.charAt(i);
+			}
+		}
+	}
+}
@@ -0,0 +1,109 @@
+package edu.gatech.seclass.texttool;
+
+import java.nio.CharBuffer;
+
+/**
+ * Finds a literal search text without going through java.util.regex.
+ *
+ * Case-insensitive matching folds the search text once and each input char
+ * through a precomputed table covering Latin-1. It matches exactly what
+ * "(?i)" + Pattern.quote(text) matches: without UNICODE_CASE the JDK folds
+ * only A-Z, so the table maps A-Z to a-z and every other char to itself, and
+ * chars beyond Latin-1 fall back to an exact comparison.
+ */
+final class LiteralMatcher {
+	private static final char[] FOLD = new char[256];
+
+	static {
+		for(char c = 0; c < FOLD.length; c++){
+			FOLD[c] = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+		}
+	}
+
+	private final String searchText;
+	private final char[] needle;
+	private final boolean caseInsensitive;
+
+	LiteralMatcher(String searchText, boolean caseInsensitive){
+		this.searchText = searchText;
+		this.needle = searchText.toCharArray();
+		this.caseInsensitive = caseInsensitive;
+		if(caseInsensitive){
+			for(int i = 0; i < needle.length; i++){
+				needle[i] = fold(needle[i]);
+			}
+		}
+	}
+
+	//Length of the search text, and so of every match
+	int length(){
+		return needle.length;
+	}
+
+	/**
+	 * Returns the index of the first match in text at or after from, or -1.
+	 */
+	int indexOf(CharSequence text, int from){
+		return indexOf(text, from, text.length());
+	}
+
+	/**
+	 * Returns the index of the first match lying wholly within text[from, to), or -1.
+	 */
+	int indexOf(CharSequence text, int from, int to){
+		//Decoded lines are array backed; scanning the array skips a virtual charAt per char
+		if(text instanceof CharBuffer && ((CharBuffer) text).hasArray()){
+			CharBuffer buf = (CharBuffer) text;
+			int offset = buf.arrayOffset() + buf.position();
+			int index = indexOf(buf.array(), offset + from, offset + to);
+			return index < 0 ? -1 : index - offset;
+		}
+		if(text instanceof String && !caseInsensitive && to == text.length()){
+			return ((String) text).indexOf(searchText, from);
+		}
+
+		int last = to - needle.length;
+		if(needle.length == 0){
+			return from <= to ? from : -1;
+		}
+		char first = needle[0];
+		for(int i = from; i <= last; i++){
+			if(fold(text.charAt(i)) != first){
+				continue;
+			}
+			int j = 1;
+			while(j < needle.length && fold(text.charAt(i + j)) == needle[j]){
+				j++;
+			}
+			if(j == needle.length){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private int indexOf(char[] text, int from, int to){
+		int last = to - needle.length;
+		if(needle.length == 0){
+			return from <= to ? from : -1;
+		}
+		char first = needle[0];
+		for(int i = from; i <= last; i++){
+			if(fold(text[i]) != first){
+				continue;
+			}
+			int j = 1;
+			while(j < needle.length && fold(text[i + j]) == needle[j]){
+				j++;
+			}
+			if(j == needle.length){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private char fold(char c){
+		return caseInsensitive && c < FOLD.length ? FOLD[c] : c;
+	}
+}
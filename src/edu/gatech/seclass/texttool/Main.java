@@ -1,67 +1,119 @@
 package edu.gatech.seclass.texttool;
 
-import java.io.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 public class Main {
     // Empty Main class for compiling Individual Project.
     // During Deliverable 1 and Deliverable 2, DO NOT ALTER THIS CLASS or implement it
 
+	//Below this, starting read-ahead and write-behind threads costs more than it saves
+	static final long ASYNC_MIN_BYTES = 4 << 20;
+
     public static void main(String[] args) {
-		if(args.length > 0){
-			try {
-				Path inFile = checkFile(args[args.length-1]);
-				HashMap<String, ArrayList<String>> argMap = collectProgramArgs(args);
-				errorCheck(argMap, inFile);
-				execute(argMap, inFile);
-			} catch (Exception e) {
-				usage();
-			}
+		int status = run(args);
+		//Exit statuses are opt-in, since main may run inside another program's JVM
+		if(hasFlag(args, "--exit-codes")){
+			System.exit(status);
 		}
-		else {
+    }
+
+	/**
+	 * Runs texttool without exiting the JVM. Returns 0 on success, otherwise
+	 * the exit status of the {@link ErrorCode} the run failed with.
+	 */
+	public static int run(String[] args){
+		try {
+			if(args.length == 0){
+				throw new TextToolException(ErrorCode.MISSING_ARGUMENTS, "no input file");
+			}
+			HashMap<String, ArrayList<String>> argMap = collectProgramArgs(args);
+			//Arguments are checked first, without touching the file system, so a bad invocation fails fast
+			checkArguments(argMap);
+			if(argMap.containsKey("--stats")){
+				BufferPool.resetStats();
+			}
+			Path inFile = checkFile(args[args.length-1]);
+			Codec inCodec = Codecs.detect(inFile);
+			//The job file is read once here; every chain, on every thread, is built from this copy
+			JobSpec job = checkFiles(argMap, inFile, inCodec);
+			if(argMap.containsKey("--estimate")){
+				estimate(argMap, job, inFile, inCodec);
+			}
+			else {
+				execute(argMap, job, inFile, inCodec);
+			}
+			if(argMap.containsKey("--stats")){
+				//Standard error, so the statistics never mix with output on standard output
+				System.err.println(BufferPool.stats());
+			}
+			return 0;
+		} catch (Exception e) {
+			TextToolException error = TextToolException.of(e);
+			if(hasFlag(args, "--exit-codes")){
+				System.err.println("texttool: " + error.code() + ": " + error.getMessage());
+			}
 			usage();
+			return error.code().status;
 		}
-    }
+	}
 
 	private static void usage(){
 		System.err.println("Usage: texttool [ -f | -o output_file_name | -i | -r old new | -p prefix | -c n | -d n ] FILE");
 	}
 
+	//True when flag appears among the options, i.e. anywhere but the final file argument
+	private static boolean hasFlag(String[] args, String flag){
+		for(int i = 0; i < args.length - 1; i++){
+			if(args[i].equals(flag)){
+				return true;
+			}
+		}
+		return false;
+	}
+
 	private static Path checkFile(String filePath) throws Exception{
 		Path file = Paths.get(filePath);
 
 		//Input file doesn't exist
 		if(Files.exists(file) == false){
-			throw new Exception();
+			throw new TextToolException(ErrorCode.INPUT_NOT_FOUND, filePath);
 		}
 
 		return file;
 	}
 	private static HashMap<String, ArrayList<String>> collectProgramArgs(String[] args) throws Exception {
-		HashMap<String, ArrayList<String>> argMap = new HashMap<String, ArrayList<String>>();
+		//Kept in command-line order, which plugin operations run in
+		HashMap<String, ArrayList<String>> argMap = new LinkedHashMap<String, ArrayList<String>>();
 		ArrayList<String> lastParamList = new ArrayList<String>();
 
 		for(int i = 0; i < args.length-1; i++){
 			String arg = args[i];
-			if(	arg.equals("-f") || arg.equals("-o") ||
-					arg.equals("-r") || arg.equals("-i") ||
-					arg.equals("-p") || arg.equals("-d") ||
-					arg.equals("-c")){
+			if(isBuiltIn(arg) || Operations.forFlag(arg) != null){
 				lastParamList = new ArrayList<>();
 				argMap.put(arg, lastParamList);
 			}
 			else {
 				if(argMap.isEmpty()){
-					throw new Exception();
+					throw new TextToolException(ErrorCode.UNEXPECTED_PARAMETER, arg);
 				}
 				lastParamList.add(arg);
 			}
@@ -69,176 +121,750 @@ public class Main {
 		return argMap;
 	}
 
-	private static void errorCheck(HashMap<String, ArrayList<String>> args, Path inputFile) throws Exception {
-		if(args.containsKey("-f")){
-			if	(args.containsKey("-o") ||//Must be mutually exclusive with -o
-				!args.get("-f").isEmpty()){//Only no parameters
+	private static boolean isBuiltIn(String arg){
+		return	arg.equals("-f") || arg.equals("-o") ||
+				arg.equals("-r") || arg.equals("-R") || arg.equals("-i") ||
+				arg.equals("-p") || arg.equals("-d") ||
+				arg.equals("-c") || arg.equals("-u") || arg.equals("-s") ||
+				arg.equals("--lines") || arg.equals("--include") || arg.equals("--exclude") ||
+				arg.equals("--fields") || arg.equals("--delimiter") ||
+				arg.equals("--charset") || arg.equals("--malformed") ||
+				arg.equals("--eol") || arg.equals("--exit-codes") || arg.equals("--job") ||
+				arg.equals("--estimate") || arg.equals("-j") || arg.equals("--stats") ||
+				arg.equals("--direct") || arg.equals("--analyze");
+	}
 
-				throw new Exception();
+	//Options and their parameters only; nothing here reads the file system
+	private static void checkArguments(HashMap<String, ArrayList<String>> args) throws Exception {
+		for(String flag : new String[] {"-f", "-i", "--exit-codes", "--estimate", "--stats", "--direct", "--analyze"}){
+			if(args.containsKey(flag) && !args.get(flag).isEmpty()){ //Only no parameters
+				throw new TextToolException(ErrorCode.PARAMETER_COUNT, flag);
 			}
 		}
-		if(args.containsKey("-o")){
-			ArrayList<String> oParams = args.get("-o");
-			if(oParams.size() != 1 ||	//Must only have 1 parameter
-				Files.exists(Paths.get(oParams.get(0)))){ //Output file must not exist
-
-				throw new Exception();
-			}
+		if(args.containsKey("-f") && args.containsKey("-o")){ //Must be mutually exclusive with -o
+			throw new TextToolException(ErrorCode.CONFLICTING_OPTIONS, "-f -o");
 		}
-		if(args.containsKey("-r")){
-			ArrayList<String> rParams = args.get("-r");
-			if(args.containsKey("-c") ||	//Must be mutually exclusive with -c
-				rParams.size() != 2 ||	//Must have 2 parameters
-				rParams.get(0).isEmpty()){ //First parameter must not be empty
-
-				throw new Exception();
-			}
+		if(args.containsKey("-o") && args.get("-o").size() != 1){ //Must only have 1 parameter
+			throw new TextToolException(ErrorCode.PARAMETER_COUNT, "-o");
 		}
-		if(args.containsKey("-i")){
-			if(!args.containsKey("-r") ||//Must be used only with -r
-				!args.get("-i").isEmpty()){//Only no parameters
-
-				throw new Exception();
+		for(String flag : new String[] {"-r", "-R"}){
+			if(args.containsKey(flag)){
+				ArrayList<String> rParams = args.get(flag);
+				if(args.containsKey("-c")){ //Must be mutually exclusive with -c
+					throw new TextToolException(ErrorCode.CONFLICTING_OPTIONS, flag + " -c");
+				}
+				if(rParams.size() != 2){ //Must have 2 parameters
+					throw new TextToolException(ErrorCode.PARAMETER_COUNT, flag);
+				}
+				if(rParams.get(0).isEmpty()){ //First parameter must not be empty
+					throw new TextToolException(ErrorCode.INVALID_VALUE, flag);
+				}
 			}
 		}
+		if(args.containsKey("-R") && args.containsKey("-r")){ //Must be mutually exclusive with -r
+			throw new TextToolException(ErrorCode.CONFLICTING_OPTIONS, "-R -r");
+		}
+		if(args.containsKey("-i") && !(args.containsKey("-r") || args.containsKey("-R") ||
+				args.containsKey("--include") || args.containsKey("--exclude"))){ //Must be used only with something that searches
+			throw new TextToolException(ErrorCode.MISSING_OPTION, "-i needs -r, -R, --include or --exclude");
+		}
 		if(args.containsKey("-p")){
 			ArrayList<String> pParams = args.get("-p");
-			if(pParams.size() != 1 || //Must have only one parameter
-				pParams.get(0).isEmpty()){ //Must not be blank
-				throw new Exception();
+			if(pParams.size() != 1){ //Must have only one parameter
+				throw new TextToolException(ErrorCode.PARAMETER_COUNT, "-p");
+			}
+			if(pParams.get(0).isEmpty()){ //Must not be blank
+				throw new TextToolException(ErrorCode.INVALID_VALUE, "-p");
 			}
 		}
 		if(args.containsKey("-d")){
-			ArrayList<String> dParams = args.get("-d");
-			if(dParams.size() != 1) { //Must have 1 parameter
-				throw new Exception();
+			long dlong = parseLong(args, "-d");
+			if(dlong < 1 || dlong == Long.MAX_VALUE) { //Must be positive, leaving room for the original line
+				throw new TextToolException(ErrorCode.OUT_OF_RANGE, "-d " + dlong);
 			}
-			else {
-				int dint = Integer.parseInt(dParams.get(0)); //Throws exception if non-number
-				if(dint < 1 || dint > 10) { //Must be between 1 and 10 inclusive
-					throw new Exception();
+		}
+		if(args.containsKey("-c")){
+			singleParam(args, "-c");
+			List<String> shifts = shifts(args);
+			HashSet<Integer> distinct = new HashSet<Integer>();
+			for(String shift : shifts){
+				try {
+					distinct.add(EncodeTransform.parseShift(shift)); //Any integer, however large, modulo 26
+				} catch (NumberFormatException e) {
+					throw new TextToolException(ErrorCode.INVALID_NUMBER, "-c " + shift);
+				}
+			}
+			if(shifts.size() > 1){ //Several shifts write one file each
+				if(distinct.size() < shifts.size()){ //1, +1 and 27 would write the same text twice
+					throw new TextToolException(ErrorCode.INVALID_VALUE, "-c " + args.get("-c").get(0));
+				}
+				for(String flag : new String[] {"-f", "--estimate", "--analyze"}){
+					if(args.containsKey(flag)){
+						throw new TextToolException(ErrorCode.CONFLICTING_OPTIONS, "-c " + flag);
+					}
+				}
+				if(!args.containsKey("-o")){
+					throw new TextToolException(ErrorCode.MISSING_OPTION, "-c with several shifts needs -o");
 				}
 			}
 		}
-		if(args.containsKey("-c")){
-			ArrayList<String> cParams = args.get("-c");
-			if(cParams.size() != 1) { //Must have 1 parameter
-				throw new Exception();
+		if(args.containsKey("--analyze")){ //Prints letter statistics instead of writing output
+			for(String flag : new String[] {"-f", "-o", "--estimate"}){
+				if(args.containsKey(flag)){
+					throw new TextToolException(ErrorCode.CONFLICTING_OPTIONS, "--analyze " + flag);
+				}
+			}
+		}
+		if(args.containsKey("-u")){
+			ArrayList<String> uParams = args.get("-u");
+			if(uParams.size() > 1){ //No parameters, or only the mode
+				throw new TextToolException(ErrorCode.PARAMETER_COUNT, "-u");
+			}
+			if(uParams.size() == 1 && !uParams.get(0).equals("approx")){
+				throw new TextToolException(ErrorCode.INVALID_VALUE, "-u " + uParams.get(0));
+			}
+		}
+		if(args.containsKey("-s")){
+			ArrayList<String> sParams = args.get("-s");
+			if(sParams.size() > 1) { //No parameters, or only the memory budget
+				throw new TextToolException(ErrorCode.PARAMETER_COUNT, "-s");
+			}
+			if(sParams.size() == 1) {
+				long mb = parseLong(args, "-s");
+				if(mb < 1 || mb > Long.MAX_VALUE >> 20) { //Budget in MB, which must fit a long in bytes
+					throw new TextToolException(ErrorCode.OUT_OF_RANGE, "-s " + mb);
+				}
+			}
+		}
+		if(args.containsKey("-j")){
+			ArrayList<String> jParams = args.get("-j");
+			if(jParams.size() > 1) { //No parameters, or only the thread count
+				throw new TextToolException(ErrorCode.PARAMETER_COUNT, "-j");
+			}
+			if(jParams.size() == 1 && parseLong(args, "-j") < 1) {
+				throw new TextToolException(ErrorCode.OUT_OF_RANGE, "-j " + jParams.get(0));
+			}
+		}
+		for(String filter : new String[] {"--include", "--exclude"}){
+			if(args.containsKey(filter)){
+				ArrayList<String> fParams = args.get(filter);
+				if(fParams.isEmpty()){ //At least one token
+					throw new TextToolException(ErrorCode.PARAMETER_COUNT, filter);
+				}
+				if(fParams.contains("")){ //No blank tokens
+					throw new TextToolException(ErrorCode.INVALID_VALUE, filter);
+				}
+			}
+		}
+		if(args.containsKey("--fields")){
+			FieldTransform.parseFields(singleParam(args, "--fields"));
+		}
+		if(args.containsKey("--delimiter")){
+			if(!args.containsKey("--fields")){ //Must be used only with --fields
+				throw new TextToolException(ErrorCode.MISSING_OPTION, "--delimiter needs --fields");
+			}
+			FieldTransform.parseDelimiter(singleParam(args, "--delimiter"));
+		}
+		if(args.containsKey("--lines")){
+			long[] range = parseLineRange(singleParam(args, "--lines"));
+			if(range[0] < 1 || range[1] < range[0]) { //1-based and not reversed
+				throw new TextToolException(ErrorCode.OUT_OF_RANGE, "--lines " + args.get("--lines").get(0));
+			}
+		}
+		if(args.containsKey("--charset")){
+			String name = singleParam(args, "--charset");
+			if(!name.equals("auto")){
+				TextEncoding.forName(name); //Must be known and ASCII compatible
+			}
+		}
+		if(args.containsKey("--malformed")){
+			TextEncoding.parseMalformed(singleParam(args, "--malformed"));
+		}
+		if(args.containsKey("--eol")){
+			LineEnding.parse(singleParam(args, "--eol"));
+		}
+		if(args.containsKey("--job")){
+			singleParam(args, "--job");
+			//The job file replaces the operation options
+			for(String flag : args.keySet()){
+				if(flag.equals("-r") || flag.equals("-R") || flag.equals("-p") || flag.equals("-c") || !isBuiltIn(flag)){
+					throw new TextToolException(ErrorCode.CONFLICTING_OPTIONS, "--job " + flag);
+				}
+			}
+		}
+		for(String flag : args.keySet()){
+			if(!isBuiltIn(flag)){
+				Operation operation = Operations.forFlag(flag);
+				if(args.get(flag).size() != operation.parameterCount()){
+					throw new TextToolException(ErrorCode.PARAMETER_COUNT, flag);
+				}
+				try {
+					operation.validate(args.get(flag));
+				} catch (Exception e) {
+					throw new TextToolException(ErrorCode.INVALID_VALUE, flag + ": " + e.getMessage());
+				}
+			}
+		}
+		//Compiling patterns is the costliest argument check, so it runs last
+		int flags = args.containsKey("-i") ? Pattern.CASE_INSENSITIVE : 0;
+		if(args.containsKey("-R")){
+			//The replacement must not name a missing group
+			Pattern pattern = PatternCache.compile(args.get("-R").get(0), flags);
+			RegexReplaceTransform.checkReplacement(pattern, args.get("-R").get(1));
+		}
+		for(String filter : new String[] {"--include", "--exclude"}){
+			if(args.containsKey(filter)){
+				for(String token : args.get(filter)){
+					if(!LineFilter.isLiteral(token)){
+						PatternCache.compile(token, flags);
+					}
+				}
+			}
+		}
+	}
+
+	//The input exists by now; these checks only look at file metadata, the input's last bytes
+	//and the job file, which is returned parsed, or null without --job
+	private static JobSpec checkFiles(HashMap<String, ArrayList<String>> args, Path inputFile, Codec inCodec) throws Exception {
+		if(args.containsKey("-o")){ //Output files must not exist
+			List<Path> outFiles = new ArrayList<Path>();
+			Path outFile = Paths.get(args.get("-o").get(0));
+			List<String> shifts = shifts(args);
+			if(shifts.size() > 1){
+				for(String shift : shifts){
+					outFiles.add(shiftedFile(outFile, shift));
+				}
 			}
 			else {
-				int cint = Integer.parseInt(cParams.get(0));  //Throws exception if non-number
-				if(cint < -25 || cint > 25) { //Must be between 1 and 10 inclusive
-					throw new Exception();
+				outFiles.add(outFile);
+			}
+			for(Path file : outFiles){
+				if(Files.exists(file)){
+					throw new TextToolException(ErrorCode.OUTPUT_EXISTS, file.toString());
 				}
 			}
 		}
-		String fileContent = Files.readString(inputFile, StandardCharsets.UTF_8);
-		//Non empty file must end with new line
-		if(!fileContent.isEmpty() && !fileContent.endsWith(System.lineSeparator())){
-			throw new Exception();
+		JobSpec job = null;
+		if(args.containsKey("--job")){
+			Path jobFile = Paths.get(args.get("--job").get(0));
+			if(!Files.exists(jobFile)){ //Not the input, so not INPUT_NOT_FOUND
+				throw new TextToolException(ErrorCode.INVALID_VALUE, "--job " + jobFile);
+			}
+			job = JobSpec.parse(jobFile); //Throws exception if invalid
+			if(!job.outputs().isEmpty()){ //The job names the outputs itself
+				for(String flag : new String[] {"-f", "-o", "--estimate", "--analyze"}){
+					if(args.containsKey(flag)){
+						throw new TextToolException(ErrorCode.CONFLICTING_OPTIONS, "--job output " + flag);
+					}
+				}
+			}
+			for(Path file : job.outputs()){ //Output files must not exist
+				if(Files.exists(file)){
+					throw new TextToolException(ErrorCode.OUTPUT_EXISTS, file.toString());
+				}
+			}
+		}
+		LineEnding ending = args.containsKey("--eol") ? LineEnding.parse(args.get("--eol").get(0)) : LineEnding.SYSTEM;
+		//Compressed input is checked for its final new line while it streams
+		if(inCodec == null){
+			checkLastLine(inputFile, ending);
+		}
+		return job;
+	}
+
+	//Returns the only parameter of option
+	private static String singleParam(HashMap<String, ArrayList<String>> args, String option) throws TextToolException {
+		ArrayList<String> params = args.get(option);
+		if(params.size() != 1) { //Must have 1 parameter
+			throw new TextToolException(ErrorCode.PARAMETER_COUNT, option);
+		}
+		return params.get(0);
+	}
+
+	private static long parseLong(HashMap<String, ArrayList<String>> args, String option) throws TextToolException {
+		String value = singleParam(args, option);
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			throw new TextToolException(ErrorCode.INVALID_NUMBER, option + " " + value);
+		}
+	}
+
+	//Non empty file must end with new line: the platform one by default, either kind
+	//with an explicit --eol, and none at all when preserving the input byte for byte
+	private static void checkLastLine(Path inputFile, LineEnding ending) throws Exception {
+		if(ending == LineEnding.PRESERVE){
+			return;
+		}
+		byte[] expected = (ending == LineEnding.SYSTEM ? System.lineSeparator() : "\n").getBytes(StandardCharsets.UTF_8);
+		try(FileChannel channel = FileChannel.open(inputFile, StandardOpenOption.READ)){
+			long size = channel.size();
+			if(size == 0){
+				return;
+			}
+			if(size < expected.length){
+				throw new TextToolException(ErrorCode.MISSING_FINAL_NEWLINE, inputFile.toString());
+			}
+			//Only the last bytes are read, whatever the file size
+			ByteBuffer tail = ByteBuffer.allocate(expected.length);
+			while(tail.hasRemaining() && channel.read(tail, size - tail.remaining()) > 0){
+				//Keep reading until full
+			}
+			if(!Arrays.equals(tail.array(), expected)){
+				throw new TextToolException(ErrorCode.MISSING_FINAL_NEWLINE, inputFile.toString());
+			}
+		}
+	}
+
+	//--include and --exclude, or null without them
+	private static LineFilter createFilter(HashMap<String, ArrayList<String>> args){
+		if(!args.containsKey("--include") && !args.containsKey("--exclude")){
+			return null;
 		}
+		ArrayList<String> none = new ArrayList<String>();
+		return new LineFilter(args.getOrDefault("--include", none), args.getOrDefault("--exclude", none), args.containsKey("-i"));
+	}
+
+	//Fresh transforms for every operation requested, in the order they run
+	private static List<LineTransform> createTransforms(HashMap<String, ArrayList<String>> args, JobSpec job) throws Exception {
+		return createTransforms(args, job, -1);
 	}
 
-	private static void execute(HashMap<String, ArrayList<String>> args, Path inputFile) throws Exception{
-		List<String> inputContents = Files.readAllLines(inputFile, StandardCharsets.UTF_8);
+	//output picks the section of a job file with outputs, -1 a job without any
+	private static List<LineTransform> createTransforms(HashMap<String, ArrayList<String>> args, JobSpec job, int output) throws Exception {
+		List<LineTransform> transforms = new ArrayList<LineTransform>();
 
 		if(args.containsKey("-r")){
-			inputContents = replace(inputContents, args.get("-r").get(0), args.get("-r").get(1), args.containsKey("-i"));
+			transforms.add(new ReplaceTransform(args.get("-r").get(0), args.get("-r").get(1), args.containsKey("-i")));
+		}
+
+		if(args.containsKey("-R")){
+			transforms.add(new RegexReplaceTransform(args.get("-R").get(0), args.get("-R").get(1), args.containsKey("-i")));
 		}
 
 		if(args.containsKey("-p")){
-			inputContents = prefix(inputContents, args.get("-p").get(0));
+			transforms.add(new PrefixTransform(args.get("-p").get(0)));
 		}
 
 		if(args.containsKey("-c")){
-			inputContents = encode(inputContents, args.get("-c").get(0));
+			transforms.add(new EncodeTransform(EncodeTransform.parseShift(args.get("-c").get(0))));
 		}
 
-		if(args.containsKey("-d")){
-			inputContents = duplicateLines(inputContents, args.get("-d").get(0));
+		//Plugin operations follow the built-in ones, in command-line order
+		for(String flag : args.keySet()){
+			if(!isBuiltIn(flag)){
+				transforms.add(Operations.forFlag(flag).create(args.get(flag)));
+			}
 		}
 
-		String output = inputContents.isEmpty() ? "" :
-				inputContents.stream().collect(Collectors.joining(System.lineSeparator(), "", System.lineSeparator()));;
+		//A job file lists the operations itself, in any order and number
+		if(job != null){
+			transforms = output < 0 ? job.transforms() : job.transforms(output);
+		}
 
-		//Set output stream
-		if(args.containsKey("-f")){
-			FileWriter writer = new FileWriter(inputFile.toFile());
-			writer.write(output);
-			writer.close();
-		}
-		else if(args.containsKey("-o"))
-		{
-			File outFile = new File(args.get("-o").get(0));
-			outFile.createNewFile();
-			FileWriter writer = new FileWriter(outFile);
-			writer.write(output);
-			writer.close();
+		//Field mode applies the operations above to the selected columns only
+		if(args.containsKey("--fields")){
+			char delimiter = args.containsKey("--delimiter") ? FieldTransform.parseDelimiter(args.get("--delimiter").get(0)) : '\t';
+			LineTransform fields = new FieldTransform(delimiter, FieldTransform.parseFields(args.get("--fields").get(0)),
+					new TransformChain(transforms));
+			transforms = new ArrayList<LineTransform>();
+			transforms.add(fields);
 		}
-		else{
-			System.out.print(output);
+		return transforms;
+	}
+
+	//Output is written in the input's charset, so unchanged text round trips byte for byte
+	private static TextEncoding createEncoding(HashMap<String, ArrayList<String>> args, Path inputFile, Codec inCodec) throws Exception {
+		if(!args.containsKey("--charset")){
+			return TextEncoding.DEFAULT;
 		}
+		String name = args.get("--charset").get(0);
+		return name.equals("auto") ? TextEncoding.detect(inputFile, inCodec) : TextEncoding.forName(name);
+	}
 
+	//Each line is written once plus once per duplicate
+	private static long copies(HashMap<String, ArrayList<String>> args){
+		return args.containsKey("-d") ? 1 + Long.parseLong(args.get("-d").get(0)) : 1;
 	}
 
-	private static List<String> replace(List<String> input, String searchText, String replaceText, boolean caseInsensitive) {
-		List<String> replacedContents = new ArrayList<String>();
-		String pattern = (caseInsensitive ? "(?i)" : "") + Pattern.quote(searchText);
-		for(String s : input){
-			replacedContents.add(s.replaceFirst(pattern, Matcher.quoteReplacement(replaceText)));
-		}
-		return replacedContents;
+	private static int threads(HashMap<String, ArrayList<String>> args){
+		int processors = Runtime.getRuntime().availableProcessors();
+		return args.get("-j").isEmpty() ? processors : (int) Math.min(Long.parseLong(args.get("-j").get(0)), 4 * processors);
 	}
 
-	private static List<String> prefix(List<String> input, String prefix){
-		List<String> prefixContents = new ArrayList<String>();
-		for(String s : input){
-			prefixContents.add(prefix+s);
+	private static long sortBudget(HashMap<String, ArrayList<String>> args){
+		return args.get("-s").isEmpty() ? LineStore.defaultMemoryLimit() : Long.parseLong(args.get("-s").get(0)) << 20;
+	}
+
+	//Samples the input and prints the predicted results of the run instead of running it
+	private static void estimate(HashMap<String, ArrayList<String>> args, JobSpec job, Path inputFile, Codec inCodec) throws Exception {
+		LineEnding ending = args.containsKey("--eol") ? LineEnding.parse(args.get("--eol").get(0)) : LineEnding.SYSTEM;
+		Estimator estimator = new Estimator(createFilter(args), new TransformChain(createTransforms(args, job)),
+				createEncoding(args, inputFile, inCodec), ending, copies(args));
+		estimator.sample(inputFile, inCodec);
+		long[] lineRange = null;
+		if(args.containsKey("--lines")){
+			long[] range = parseLineRange(args.get("--lines").get(0));
+			lineRange = new long[] {range[0] - 1, range[1] == Long.MAX_VALUE ? Long.MAX_VALUE : range[1] - range[0] + 1};
 		}
-		return prefixContents;
+		estimator.report(System.out, lineRange, args.containsKey("-u"), args.containsKey("-s") ? sortBudget(args) : 0);
+		System.out.flush();
 	}
 
-	private static List<String> encode(List<String> input, String cipherStr){
-		List<String> encodedContents = new ArrayList<String>();
-		int cipherInt = Integer.parseInt(cipherStr);
-		if(cipherInt < 0){
-			cipherInt = 26 + (cipherInt % 26);
+	private static void execute(HashMap<String, ArrayList<String>> args, final JobSpec job, Path inputFile, Codec inCodec) throws Exception{
+		LineFilter filter = createFilter(args);
+		TextEncoding encoding = createEncoding(args, inputFile, inCodec);
+		CodingErrorAction malformed = args.containsKey("--malformed") ?
+				TextEncoding.parseMalformed(args.get("--malformed").get(0)) : CodingErrorAction.REPORT;
+
+		long copies = copies(args);
+
+		//Compressed input only has its decompressed size estimated, and only where -u approx needs it
+		long inputBytes = Files.size(inputFile);
+		if(inCodec != null && args.containsKey("-u") && !args.get("-u").isEmpty()){
+			inputBytes = Estimator.decompressedSize(inputFile, inCodec);
 		}
 
-		for(String s : input){
-			String out = "";
-			for(int i = 0; i < s.length(); i++) {
-				char c = s.charAt(i);
+		//--lines START:END limits processing to an inclusive, 1-based range
+		long firstLine = 0;
+		long lineLimit = Long.MAX_VALUE;
+		if(args.containsKey("--lines")){
+			long[] range = parseLineRange(args.get("--lines").get(0));
+			firstLine = range[0] - 1;
+			lineLimit = range[1] == Long.MAX_VALUE ? Long.MAX_VALUE : range[1] - range[0] + 1;
+		}
+
+		LineEnding ending = args.containsKey("--eol") ? LineEnding.parse(args.get("--eol").get(0)) : LineEnding.SYSTEM;
+
+		//Set output stream. -f goes through a temporary file so the input can still be streamed
+		Path outFile = null;
+		Codec outCodec = null;
+		if(args.containsKey("-f")){
+			//Named by hand: Files.createTempFile pulls in SecureRandom, which dominates startup on small files
+			Path realInput = inputFile.toRealPath();
+			outFile = realInput.resolveSibling("." + realInput.getFileName() + "." + Long.toHexString(System.nanoTime()) + ".tmp");
+			outCodec = inCodec;
+		}
+		else if(args.containsKey("-o")){
+			outFile = Paths.get(args.get("-o").get(0));
+			outCodec = Codecs.forName(outFile.getFileName().toString());
+		}
+
+		//Several -c shifts each get their own copy of the -o file, and a job file may name
+		//outputs of its own, all written from one pass
+		List<String> shifts = shifts(args);
+		List<Path> jobOutputs = job != null ? job.outputs() : new ArrayList<Path>();
+		boolean analyze = args.containsKey("--analyze");
+		boolean single = !analyze && shifts.size() <= 1 && jobOutputs.isEmpty();
+
+		//-j runs on several threads: straight into the output file when its size can be predicted,
+		//else through a reorder buffer. Anything needing to see every line in order runs sequentially
+		ParallelRunner runner = null;
+		if(args.containsKey("-j") && single && !args.containsKey("-u") && !args.containsKey("-s") &&
+				firstLine == 0 && lineLimit == Long.MAX_VALUE){
+			final HashMap<String, ArrayList<String>> jobArgs = args;
+			runner = new ParallelRunner(new ParallelRunner.Stages() {
+				@Override
+				public LineFilter filter(){
+					return createFilter(jobArgs);
+				}
+
+				@Override
+				public TransformChain chain() throws Exception {
+					return new TransformChain(createTransforms(jobArgs, job));
+				}
+			}, encoding, malformed, ending, copies, threads(args));
+		}
+		if(runner != null && outFile != null && outCodec == null && inCodec == null && !args.containsKey("--direct")){
+			boolean ran = false;
+			try {
+				ran = runner.run(inputFile, outFile);
+				if(ran && args.containsKey("-f")){
+					replaceInput(outFile, inputFile);
+				}
+			}
+			catch(Exception e){
+				Files.deleteIfExists(outFile);
+				throw e;
+			}
+			if(ran){
+				return;
+			}
+		}
+
+		List<Branch> branches = new ArrayList<Branch>();
+		FanOut fanOut = null;
+		boolean complete = false;
+		ReadableByteChannel inChannel = null;
+		try {
+			//--direct bypasses the page cache, keeping it for other processes on the host
+			SeekableByteChannel fileChannel = args.containsKey("--direct") ? DirectIO.openRead(inputFile) :
+					FileChannel.open(inputFile, StandardOpenOption.READ);
+			inChannel = fileChannel;
+			if(inCodec != null){
+				inChannel = Channels.newChannel(inCodec.decompress(Channels.newInputStream(fileChannel)));
+			}
+			//Seek to the closest indexed line, then skip the rest without decoding. Lines before the
+			//first checkpoint are closer by scanning, and compressed input has no usable byte offsets
+			long skip = firstLine;
+			if(firstLine >= LineIndex.STRIDE && inCodec == null){
+				LineIndex index = LineIndex.forFile(inputFile, firstLine);
+				fileChannel.position(Math.max(encoding.bomLength, index.checkpointOffset(firstLine)));
+				skip -= index.checkpointLine(firstLine);
+			}
+			else if(encoding.bomLength > 0){
+				ByteBuffer bom = ByteBuffer.allocate(encoding.bomLength);
+				while(bom.hasRemaining() && inChannel.read(bom) >= 0){
+					//Drop the byte order mark
+				}
+			}
+
+			if(runner != null && runner.canRunOrdered()){
+				Branch branch = openBranch(args, createTransforms(args, job), branches, encoding, inputBytes,
+						outFile, outCodec, false, ending, copies, 1);
+				try {
+					runner.runOrdered(inChannel, branch.channel(), inputFile.toString());
+				}
+				finally {
+					inChannel.close();
+				}
+				branch.finish();
+				if(args.containsKey("-f")){
+					replaceInput(outFile, inputFile);
+				}
+				complete = true;
+				return;
+			}
+			//Large inputs are read ahead and written behind on threads of their own,
+			//so neither disk waits for the other nor for the work in between
+			boolean async = fileChannel.size() >= ASYNC_MIN_BYTES;
+			if(async){
+				inChannel = new ReadAheadChannel(inChannel);
+			}
+			LetterHistogram histogram = null;
+			if(analyze){
+				histogram = new LetterHistogram();
+				Branch branch = new Branch(new TransformChain(createTransforms(args, job)),
+						createDeduplicator(args, encoding, inputBytes, 1), createSorter(args, encoding, 1));
+				branches.add(branch);
+				branch.sendTo(histogram);
+			}
+			else if(shifts.size() > 1){
+				for(String shift : shifts){
+					openBranch(args, createTransforms(withShift(args, shift), job), branches, encoding, inputBytes,
+							shiftedFile(outFile, shift), outCodec, false, ending, copies, shifts.size());
+				}
+			}
+			else if(!jobOutputs.isEmpty()){
+				for(int i = 0; i < jobOutputs.size(); i++){
+					Path file = jobOutputs.get(i);
+					openBranch(args, createTransforms(args, job, i), branches, encoding, inputBytes, file,
+							Codecs.forName(file.getFileName().toString()), async && jobOutputs.size() == 1,
+							ending, copies, jobOutputs.size());
+				}
+			}
+			else {
+				openBranch(args, createTransforms(args, job), branches, encoding, inputBytes, outFile, outCodec, async, ending, copies, 1);
+			}
+			//Several outputs each transform and write on a thread of their own
+			if(branches.size() > 1){
+				fanOut = new FanOut(branches);
+			}
+			LineSink target = fanOut != null ? fanOut : branches.get(0);
+			try(LineReader reader = new LineReader(inChannel, encoding.charset, malformed)){
+				while(skip > 0 && reader.next()){
+					skip--;
+				}
 
-				if (Character.isAlphabetic(c)) {
-					//Captial A-Z
-					if (Character.isUpperCase(c)) {
-						out += (char) (((c - 'A') + cipherInt) % 26 + 'A');
+				long remaining = lineLimit;
+				int firstTerminator = -1;
+				while(remaining-- > 0 && reader.next()){
+					//Non empty file must end with new line; reported before the last line goes out
+					if(reader.unterminated() && ending != LineEnding.PRESERVE){
+						throw new TextToolException(ErrorCode.MISSING_FINAL_NEWLINE, inputFile.toString());
+					}
+					int terminator = reader.terminator();
+					if(ending == LineEnding.AUTO){
+						//The first line decides for the whole file
+						if(firstTerminator < 0){
+							firstTerminator = terminator == 0 ? 1 : terminator;
+						}
+						terminator = firstTerminator;
 					}
-					//Lowercase a-z
-					else {
-						out += (char) (((c - 'a') + cipherInt) % 26 + 'a');
+					CharSequence line = reader.line();
+					if(filter != null && !filter.accept(line)){
+						continue;
 					}
+					target.accept(line, terminator);
 				}
-				//Non-alphabetic character
-				else {
-					out += c;
+			}
+			if(fanOut != null){
+				fanOut.finish();
+			}
+			else {
+				branches.get(0).finish();
+			}
+			if(args.containsKey("-f")){
+				replaceInput(outFile, inputFile);
+			}
+			if(histogram != null){
+				histogram.report(System.out);
+			}
+			complete = true;
+		}
+		finally {
+			try {
+				//Normally closed already; on failure this also stops the read-ahead thread
+				if(inChannel != null){
+					inChannel.close();
+				}
+			}
+			finally {
+				try {
+					if(fanOut != null){
+						fanOut.close();
+					}
+					closeAll(branches);
+				}
+				finally {
+					//A finished temporary file the input could not be replaced with
+					if(!complete && args.containsKey("-f")){
+						Files.deleteIfExists(outFile);
+					}
+					System.out.flush();
 				}
 			}
-			encodedContents.add(out);
 		}
-		return encodedContents;
 	}
 
-	private static List<String> duplicateLines(List<String> input, String dupNumStr){
-		List<String> duplicateInput = new ArrayList<String>();
-		int dupNumInt = Integer.parseInt(dupNumStr);
-		for(String s : input){
-			for(int i = 0; i <= dupNumInt; i++){
-				duplicateInput.add(s);
+	//Writes the finished -f output over the input file itself, so its permissions, owner,
+	//hard links and any symlink pointing at it stay as they were, then drops the temporary file
+	private static void replaceInput(Path outFile, Path inputFile) throws Exception {
+		try(FileChannel source = FileChannel.open(outFile, StandardOpenOption.READ);
+				FileChannel target = FileChannel.open(inputFile.toRealPath(), StandardOpenOption.WRITE)){
+			long size = source.size();
+			long copied = 0;
+			while(copied < size){
+				copied += source.transferTo(copied, size - copied, target);
 			}
+			target.truncate(size);
 		}
+		Files.delete(outFile);
+	}
 
-		return duplicateInput;
+	//The -c shifts, none without -c
+	private static List<String> shifts(HashMap<String, ArrayList<String>> args){
+		return args.containsKey("-c") ? Arrays.asList(args.get("-c").get(0).split(",", -1)) : new ArrayList<String>();
+	}
+
+	//args with -c set to the one shift
+	private static HashMap<String, ArrayList<String>> withShift(HashMap<String, ArrayList<String>> args, String shift){
+		HashMap<String, ArrayList<String>> shifted = new LinkedHashMap<String, ArrayList<String>>(args);
+		shifted.put("-c", new ArrayList<String>(Arrays.asList(shift)));
+		return shifted;
+	}
+
+	//The output of one of several -c shifts: out.txt.gz for shift 3 is out.3.txt.gz
+	private static Path shiftedFile(Path file, String shift){
+		String name = file.getFileName().toString();
+		int dot = name.indexOf('.', 1);
+		name = dot < 0 ? name + "." + shift : name.substring(0, dot) + "." + shift + name.substring(dot);
+		return file.resolveSibling(name);
+	}
+
+	//Exact stores of all outputs together keep to the usual store memory. The Bloom filter is sized
+	//from the decompressed input, assuming lines of 32 bytes on average, and the filters of all
+	//outputs together kept to a quarter of the heap
+	private static Deduplicator createDeduplicator(HashMap<String, ArrayList<String>> args, TextEncoding encoding, long inputBytes,
+			int outputs){
+		if(!args.containsKey("-u")){
+			return null;
+		}
+		if(args.get("-u").isEmpty()){
+			return Deduplicator.exact(encoding.charset, LineStore.defaultMemoryLimit() / outputs);
+		}
+		long maxBytes = Runtime.getRuntime().maxMemory() / 4 / outputs;
+		Deduplicator filter = Deduplicator.approximate(Math.max(1 << 16, inputBytes / 32), maxBytes);
+		if(filter.clamped()){
+			System.err.println("texttool: warning: -u approx filter capped at " + (maxBytes >> 20) +
+					" MB; more than 1% of unique lines may be dropped");
+		}
+		return filter;
+	}
+
+	//Sorters running side by side share the memory budget
+	private static ExternalSorter createSorter(HashMap<String, ArrayList<String>> args, TextEncoding encoding, int sorters){
+		if(!args.containsKey("-s")){
+			return null;
+		}
+		return new ExternalSorter(Math.max(1, sortBudget(args) / sorters), Runtime.getRuntime().availableProcessors(), encoding.charset);
+	}
+
+	//Adds a branch writing through transforms to outFile, or standard output when null
+	private static Branch openBranch(HashMap<String, ArrayList<String>> args, List<LineTransform> transforms, List<Branch> branches,
+			TextEncoding encoding, long inputBytes, Path outFile, Codec outCodec, boolean async, LineEnding ending, long copies,
+			int outputs) throws Exception {
+		Branch branch = new Branch(new TransformChain(transforms), createDeduplicator(args, encoding, inputBytes, outputs),
+				createSorter(args, encoding, outputs));
+		branches.add(branch);
+		WritableByteChannel channel;
+		if(outFile != null){
+			try {
+				channel = args.containsKey("--direct") ? DirectIO.create(outFile) :
+						FileChannel.open(outFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+			}
+			catch(IOException e){
+				throw TextToolException.output(outFile, e);
+			}
+			if(outCodec != null){
+				channel = Channels.newChannel(outCodec.compress(Channels.newOutputStream(channel)));
+			}
+		}
+		else{
+			channel = Channels.newChannel(System.out);
+		}
+		if(async){
+			channel = new WriteBehindChannel(channel, outFile != null);
+		}
+		//Standard output stays open for the caller; write-behind only drains into it
+		branch.writeTo(channel, outFile != null || async, outFile, encoding.charset, ending, copies);
+		if(encoding.bomLength > 0){
+			//Keep the byte order mark the input started with
+			ByteBuffer bom = ByteBuffer.wrap("\uFEFF".getBytes(encoding.charset));
+			while(bom.hasRemaining()){
+				channel.write(bom);
+			}
+		}
+		return branch;
+	}
+
+	//Closes every branch, reporting the first failure
+	private static void closeAll(List<Branch> branches) throws Exception {
+		Exception failure = null;
+		for(Branch branch : branches){
+			try {
+				branch.close();
+			}
+			catch(Exception e){
+				if(failure == null){
+					failure = e;
+				}
+			}
+		}
+		if(failure != null){
+			throw failure;
+		}
+	}
+
+	//Parses "START:END" or the open ended "START:" into {START, END}
+	private static long[] parseLineRange(String range) throws Exception {
+		int colon = range.indexOf(':');
+		if(colon < 0){
+			throw new TextToolException(ErrorCode.INVALID_VALUE, "--lines " + range);
+		}
+		long start = Long.parseLong(range.substring(0, colon));
+		String endText = range.substring(colon + 1);
+		long end = endText.isEmpty() ? Long.MAX_VALUE : Long.parseLong(endText);
+		return new long[] {start, end};
 	}
 }
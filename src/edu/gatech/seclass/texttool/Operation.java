@@ -0,0 +1,34 @@
+package edu.gatech.seclass.texttool;
+
+import java.util.List;
+
+/**
+ * A line operation contributed by a plugin. Implementations are found through
+ * {@link java.util.ServiceLoader} by listing them in
+ * META-INF/services/edu.gatech.seclass.texttool.Operation, and are selected
+ * on the command line by their flag. Their transforms run after the built-in
+ * operations, in command-line order, fused into the same single pass.
+ */
+public interface Operation {
+	/**
+	 * The command-line flag selecting this operation. Must start with "--"
+	 * and not be one of the built-in flags.
+	 */
+	String flag();
+
+	/**
+	 * Number of parameters following the flag.
+	 */
+	int parameterCount();
+
+	/**
+	 * Throws if the parameters are unusable. Called before any file is opened.
+	 */
+	void validate(List<String> parameters) throws Exception;
+
+	/**
+	 * Creates a transform for validated parameters. May be called more than
+	 * once per run, e.g. once per worker thread.
+	 */
+	LineTransform create(List<String> parameters);
+}
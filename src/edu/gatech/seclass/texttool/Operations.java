@@ -0,0 +1,46 @@
+package edu.gatech.seclass.texttool;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.ServiceLoader;
+
+/**
+ * Finds plugin operations by flag. Plugins are only loaded once an argument
+ * no built-in option claims turns up, keeping ServiceLoader off the startup
+ * path for ordinary runs.
+ */
+final class Operations {
+	private static List<Operation> plugins;
+	private static ClassLoader loadedBy;
+
+	private Operations(){
+	}
+
+	/**
+	 * Returns the plugin operation with the given flag, or null.
+	 */
+	static Operation forFlag(String flag){
+		if(!flag.startsWith("--")){
+			return null;
+		}
+		for(Operation operation : plugins()){
+			if(operation.flag().equals(flag)){
+				return operation;
+			}
+		}
+		return null;
+	}
+
+	//Loaded again if the context class loader changes, as it does under a plugin host
+	private static synchronized List<Operation> plugins(){
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		if(plugins == null || loadedBy != loader){
+			plugins = new ArrayList<Operation>();
+			for(Operation operation : ServiceLoader.load(Operation.class, loader)){
+				plugins.add(operation);
+			}
+			loadedBy = loader;
+		}
+		return plugins;
+	}
+}
@@ -0,0 +1,568 @@
+package edu.gatech.seclass.texttool;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs a job on several threads, the input cut into chunks at line boundaries.
+ *
+ * A length-predictable job has each worker write its chunk straight to its
+ * final place in the output file ({@link #run}). A first parallel pass only
+ * scans the chunks, without decoding: line count, content and terminator
+ * bytes, and whether they are pure ASCII. When every chunk is ASCII and the chain's
+ * {@link TransformChain#asciiGrowth() growth} is known, that fixes each
+ * chunk's output size and so its offset. The output file is then extended to
+ * its full size and a second pass transforms the chunks, each worker writing
+ * with positional FileChannel writes, so no chunk waits for another.
+ *
+ * Any other job of stateless filters and transforms runs in order
+ * ({@link #runOrdered}) as a pipeline: a read-ahead thread, workers that
+ * filter and transform smaller chunks into memory, and the calling thread,
+ * which takes the results from a {@link ReorderBuffer} in input order and
+ * writes them to the output. Input and output may then be any stream.
+ */
+final class ParallelRunner {
+	static final int CHUNK_BYTES = 8 << 20;
+	//Chunks held in memory are kept small, as up to two per worker wait in the reorder buffer
+	static final int ORDERED_CHUNK_BYTES = 1 << 20;
+	//Above this, duplicated chunks would no longer be small
+	static final long ORDERED_MAX_COPIES = 16;
+
+	/**
+	 * Creates an independent filter and chain per worker, as both keep scratch state.
+	 */
+	interface Stages {
+		//Null when every line is kept
+		LineFilter filter();
+
+		TransformChain chain() throws Exception;
+	}
+
+	private final Stages stages;
+	private final TextEncoding encoding;
+	private final CodingErrorAction malformed;
+	private final LineEnding ending;
+	private final long copies;
+	private final int threads;
+
+	ParallelRunner(Stages stages, TextEncoding encoding, CodingErrorAction malformed, LineEnding ending, long copies, int threads){
+		this.stages = stages;
+		this.encoding = encoding;
+		this.malformed = malformed;
+		this.ending = ending;
+		this.copies = copies;
+		this.threads = threads;
+	}
+
+	/**
+	 * Writes the transformed input to outFile, which must not exist. Returns
+	 * false, having created nothing, when the output size can't be predicted
+	 * and the caller should run sequentially instead.
+	 */
+	boolean run(Path inputFile, Path outFile) throws Exception {
+		if(stages.filter() != null){
+			return false;
+		}
+		TransformChain probe = stages.chain();
+		final int growth = probe.asciiGrowth();
+		if(!probe.isStateless() || growth == LineTransform.UNPREDICTABLE || ending == LineEnding.AUTO || encoding.bomLength > 0){
+			return false;
+		}
+
+		ExecutorService workers = newWorkers(threads);
+		try(FileChannel in = FileChannel.open(inputFile, StandardOpenOption.READ)){
+			final long[] bounds = chunkBounds(in);
+			final int chunks = bounds.length - 1;
+
+			//Pass 1: shape of every chunk
+			List<Future<Shape>> scans = new ArrayList<Future<Shape>>();
+			for(int i = 0; i < chunks; i++){
+				final long start = bounds[i];
+				final long end = bounds[i + 1];
+				final FileChannel channel = in;
+				scans.add(workers.submit(new Callable<Shape>() {
+					@Override
+					public Shape call() throws IOException {
+						return Shape.scan(new RegionChannel(channel, start, end));
+					}
+				}));
+			}
+			final long[] offsets = new long[chunks + 1];
+			for(int i = 0; i < chunks; i++){
+				Shape shape = await(scans.get(i));
+				if(!shape.ascii){
+					return false;
+				}
+				offsets[i + 1] = offsets[i] + outputSize(shape, growth);
+			}
+
+			//Pass 2: transform and write every chunk at its offset
+			FileChannel created;
+			try {
+				created = FileChannel.open(outFile, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+			}
+			catch(IOException e){
+				throw TextToolException.output(outFile, e);
+			}
+			try(final FileChannel out = created){
+				if(offsets[chunks] > 0){
+					//Extend to full size up front, so writes never grow the file
+					out.write(ByteBuffer.allocate(1), offsets[chunks] - 1);
+				}
+				List<Future<Long>> writes = new ArrayList<Future<Long>>();
+				for(int i = 0; i < chunks; i++){
+					final long start = bounds[i];
+					final long end = bounds[i + 1];
+					final long offset = offsets[i];
+					final FileChannel channel = in;
+					writes.add(workers.submit(new Callable<Long>() {
+						@Override
+						public Long call() throws Exception {
+							return transform(new RegionChannel(channel, start, end), out, offset);
+						}
+					}));
+				}
+				for(int i = 0; i < chunks; i++){
+					long written = await(writes.get(i));
+					if(written != offsets[i + 1]){
+						throw new IllegalStateException("chunk " + i + " ended at " + written + ", predicted " + offsets[i + 1]);
+					}
+				}
+			}
+		}
+		finally {
+			workers.shutdownNow();
+		}
+		return true;
+	}
+
+	/**
+	 * True when {@link #runOrdered} can take the job: every transform is
+	 * stateless and no line's output depends on another line.
+	 */
+	boolean canRunOrdered() throws Exception {
+		return stages.chain().isStateless() && ending != LineEnding.AUTO && copies <= ORDERED_MAX_COPIES;
+	}
+
+	/**
+	 * Writes the filtered and transformed input to out in input order, in three
+	 * stages: a read-ahead thread cuts the input into chunks at line ends and
+	 * queues a bounded number of them, workers filter and transform them into
+	 * memory, and the calling thread writes the results behind them, taking
+	 * them from a {@link ReorderBuffer} in input order. in must already be past
+	 * any byte order mark; inputName names it in errors.
+	 */
+	void runOrdered(final ReadableByteChannel in, WritableByteChannel out, final String inputName) throws Exception {
+		ExecutorService workers = newWorkers(threads + 1);
+		try {
+			final ArrayBlockingQueue<Chunk> inputs = new ArrayBlockingQueue<Chunk>(2 * threads);
+			final ReorderBuffer<Chunk> results = new ReorderBuffer<Chunk>(threads);
+			final AtomicBoolean ended = new AtomicBoolean();
+			workers.submit(new Callable<Void>() {
+				@Override
+				public Void call() throws InterruptedException {
+					readAhead(in, inputs);
+					return null;
+				}
+			});
+			for(int i = 0; i < threads; i++){
+				workers.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws InterruptedException {
+						//Nothing may escape: the writer only learns of failures through the chunks
+						LineFilter filter = null;
+						TransformChain chain = null;
+						Exception setup = null;
+						try {
+							filter = stages.filter();
+							chain = stages.chain();
+						}
+						catch(Throwable e){
+							setup = failure(e);
+						}
+						while(true){
+							Chunk chunk = inputs.take();
+							if(chunk.end){
+								//Pass the end on to the other workers, and once to the writer
+								inputs.put(chunk);
+								if(ended.compareAndSet(false, true)){
+									results.put(chunk.sequence, chunk);
+								}
+								return null;
+							}
+							if(chunk.failure != null){
+								results.put(chunk.sequence, chunk);
+								continue;
+							}
+							ByteBuffer input = chunk.bytes;
+							try {
+								if(setup != null){
+									throw setup;
+								}
+								chunk.bytes = transform(Channels.newChannel(new ByteArrayInputStream(input.array(),
+										input.arrayOffset() + input.position(), input.remaining())), input.remaining(), filter, chain);
+								if(chunk.bytes == null){
+									throw new TextToolException(ErrorCode.MISSING_FINAL_NEWLINE, inputName);
+								}
+							}
+							catch(Throwable e){
+								chunk.bytes = null;
+								chunk.failure = failure(e);
+							}
+							BufferPool.release(input);
+							results.put(chunk.sequence, chunk);
+						}
+					}
+				});
+			}
+
+			//Write behind, one chunk at a time in input order
+			while(true){
+				Chunk chunk = results.take();
+				if(chunk.failure != null){
+					throw chunk.failure;
+				}
+				if(chunk.end){
+					break;
+				}
+				while(chunk.bytes.hasRemaining()){
+					out.write(chunk.bytes);
+				}
+				//Handed back to the workers through the pool
+				BufferPool.release(chunk.bytes);
+			}
+		}
+		finally {
+			workers.shutdownNow();
+		}
+	}
+
+	//Cuts in into chunks just after their last newline, queueing them, then an end marker
+	private static void readAhead(ReadableByteChannel in, ArrayBlockingQueue<Chunk> inputs) throws InterruptedException {
+		long sequence = 0;
+		try {
+			ByteBuffer buffer = BufferPool.bytes(ORDERED_CHUNK_BYTES);
+			boolean eof = false;
+			while(!eof){
+				while(buffer.hasRemaining()){
+					if(in.read(buffer) < 0){
+						eof = true;
+						break;
+					}
+				}
+				int filled = buffer.position();
+				int cut = eof ? filled : lastNewline(buffer.array(), filled) + 1;
+				if(cut == 0 && !eof){
+					//A line longer than the buffer
+					ByteBuffer grown = BufferPool.bytes(buffer.capacity() * 2);
+					buffer.flip();
+					grown.put(buffer);
+					BufferPool.release(buffer);
+					buffer = grown;
+					continue;
+				}
+				//What follows the cut may be most of a buffer grown for a long line
+				ByteBuffer next = eof ? null : BufferPool.bytes(Math.max(ORDERED_CHUNK_BYTES, filled - cut));
+				if(next != null){
+					next.put(buffer.array(), cut, filled - cut);
+				}
+				buffer.position(0);
+				buffer.limit(cut);
+				//The last chunk goes out even when empty, so its final line is always checked
+				Chunk chunk = new Chunk(sequence++);
+				chunk.bytes = buffer;
+				inputs.put(chunk);
+				buffer = next;
+			}
+		}
+		catch(InterruptedException e){
+			throw e;
+		}
+		catch(Throwable e){
+			//Whatever the failure, the workers and the writer must hear of it and of the end
+			Chunk failed = new Chunk(sequence++);
+			failed.failure = failure(e);
+			inputs.put(failed);
+		}
+		Chunk end = new Chunk(sequence);
+		end.end = true;
+		inputs.put(end);
+	}
+
+	private static int lastNewline(byte[] bytes, int to){
+		for(int i = to - 1; i >= 0; i--){
+			if(bytes[i] == '\n'){
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static ExecutorService newWorkers(int threads){
+		return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable task){
+				Thread thread = new Thread(task, "texttool-parallel");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	private long outputSize(Shape shape, int growth){
+		long separators;
+		String fixed = ending.fixedSeparator();
+		if(fixed != null){
+			separators = shape.lines * fixed.length();
+		}
+		else {
+			separators = shape.terminatorBytes;
+		}
+		return (shape.contentBytes + shape.lines * growth + separators) * copies;
+	}
+
+	//Transforms one chunk, returning the output position it ended at
+	private long transform(ReadableByteChannel in, FileChannel out, long offset) throws Exception {
+		TransformChain chain = stages.chain();
+		PositionalChannel target = new PositionalChannel(out, offset);
+		LineWriter writer = new LineWriter(target, encoding.charset);
+		LineSink sink = new WriterSink(writer, ending, copies);
+		try(LineReader reader = new LineReader(in, encoding.charset, malformed)){
+			while(reader.next()){
+				sink.accept(chain.apply(reader.line()), reader.terminator());
+			}
+		}
+		writer.flush();
+		writer.release();
+		return target.position;
+	}
+
+	/**
+	 * Transforms one chunk into memory, returning the bytes ready to read, or
+	 * null when it ends in an unterminated line where terminators are replaced.
+	 */
+	private ByteBuffer transform(ReadableByteChannel in, int inputBytes, LineFilter filter, TransformChain chain) throws Exception {
+		MemoryChannel target = new MemoryChannel(inputBytes + inputBytes / 8);
+		LineWriter writer = new LineWriter(target, encoding.charset);
+		LineSink sink = new WriterSink(writer, ending, copies);
+		try(LineReader reader = new LineReader(in, encoding.charset, malformed)){
+			while(reader.next()){
+				CharSequence line = reader.line();
+				if(filter != null && !filter.accept(line)){
+					continue;
+				}
+				sink.accept(chain.apply(line), reader.terminator());
+			}
+			if(reader.unterminated() && ending != LineEnding.PRESERVE){
+				writer.release();
+				BufferPool.release(target.bytes);
+				return null;
+			}
+		}
+		writer.flush();
+		writer.release();
+		target.bytes.flip();
+		return target.bytes;
+	}
+
+	//Chunk starts, each just after a newline, plus the file size
+	private static long[] chunkBounds(FileChannel in) throws IOException {
+		long size = in.size();
+		List<Long> bounds = new ArrayList<Long>();
+		bounds.add(0L);
+		ByteBuffer window = ByteBuffer.allocate(LineReader.CHUNK_SIZE);
+		long next = CHUNK_BYTES;
+		while(next < size){
+			//Look for the end of the line the nominal boundary falls in
+			long newline = -1;
+			for(long from = next - 1; newline < 0 && from < size; from += window.capacity()){
+				window.clear();
+				while(window.hasRemaining() && in.read(window, from + window.position()) > 0){
+					//Keep reading until full
+				}
+				int found = LineScanner.indexOf(window, 0, window.position());
+				if(found >= 0){
+					newline = from + found;
+				}
+			}
+			if(newline < 0 || newline + 1 >= size){
+				break;
+			}
+			bounds.add(newline + 1);
+			next = newline + 1 + CHUNK_BYTES;
+		}
+		bounds.add(size);
+		long[] result = new long[bounds.size()];
+		for(int i = 0; i < result.length; i++){
+			result[i] = bounds.get(i);
+		}
+		return result;
+	}
+
+	private static <T> T await(Future<T> future) throws Exception {
+		try {
+			return future.get();
+		}
+		catch(ExecutionException e){
+			throw failure(e.getCause());
+		}
+	}
+
+	//e as an Exception, wrapping Errors so they can be handed on and rethrown
+	private static Exception failure(Throwable e){
+		return e instanceof Exception ? (Exception) e : new IOException(e);
+	}
+
+	//A chunk of an ordered run: its input, then its output or why there is none
+	private static final class Chunk {
+		final long sequence;
+		ByteBuffer bytes;
+		Exception failure;
+		boolean end;
+
+		Chunk(long sequence){
+			this.sequence = sequence;
+		}
+	}
+
+	//Line count, bytes and ASCII-ness of a chunk, found without decoding it
+	private static final class Shape {
+		long lines;
+		long contentBytes;
+		long terminatorBytes;
+		boolean ascii = true;
+
+		static Shape scan(ReadableByteChannel in) throws IOException {
+			Shape shape = new Shape();
+			try(LineReader reader = new LineReader(in, StandardCharsets.US_ASCII)){
+				while(reader.next()){
+					shape.lines++;
+					shape.contentBytes += reader.end() - reader.start();
+					shape.terminatorBytes += reader.terminator();
+					if(shape.ascii && !LineScanner.isAscii(reader.buffer(), reader.start(), reader.end())){
+						shape.ascii = false;
+					}
+				}
+			}
+			return shape;
+		}
+	}
+
+	//Reads [position, end) of a file shared with other threads
+	private static final class RegionChannel implements ReadableByteChannel {
+		private final FileChannel file;
+		private final long end;
+		private long position;
+
+		RegionChannel(FileChannel file, long start, long end){
+			this.file = file;
+			this.position = start;
+			this.end = end;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			if(position >= end){
+				return -1;
+			}
+			int limit = dst.limit();
+			if(dst.remaining() > end - position){
+				dst.limit(dst.position() + (int) (end - position));
+			}
+			int read = file.read(dst, position);
+			dst.limit(limit);
+			if(read > 0){
+				position += read;
+			}
+			return read;
+		}
+
+		@Override
+		public boolean isOpen(){
+			return true;
+		}
+
+		//The file is shared, so it stays open
+		@Override
+		public void close(){
+		}
+	}
+
+	//Collects writes in a pooled heap buffer, grown as needed
+	private static final class MemoryChannel implements WritableByteChannel {
+		ByteBuffer bytes;
+
+		MemoryChannel(int capacity){
+			bytes = BufferPool.bytes(Math.max(capacity, LineReader.CHUNK_SIZE));
+		}
+
+		@Override
+		public int write(ByteBuffer src){
+			int length = src.remaining();
+			if(bytes.remaining() < length){
+				ByteBuffer grown = BufferPool.bytes(Math.max(bytes.capacity() * 2, bytes.position() + length));
+				bytes.flip();
+				grown.put(bytes);
+				BufferPool.release(bytes);
+				bytes = grown;
+			}
+			bytes.put(src);
+			return length;
+		}
+
+		@Override
+		public boolean isOpen(){
+			return true;
+		}
+
+		@Override
+		public void close(){
+		}
+	}
+
+	//Writes at an advancing position of a file shared with other threads
+	private static final class PositionalChannel implements WritableByteChannel {
+		private final FileChannel file;
+		long position;
+
+		PositionalChannel(FileChannel file, long position){
+			this.file = file;
+			this.position = position;
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			int written = file.write(src, position);
+			position += written;
+			return written;
+		}
+
+		@Override
+		public boolean isOpen(){
+			return true;
+		}
+
+		@Override
+		public void close(){
+		}
+	}
+}
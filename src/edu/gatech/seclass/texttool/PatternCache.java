@@ -0,0 +1,39 @@
+package edu.gatech.seclass.texttool;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Bounded LRU cache of compiled patterns keyed by (regex, flags), so repeated
+ * runs inside one JVM (batch jobs, a daemon) never recompile the same pattern.
+ */
+final class PatternCache {
+	static final int CAPACITY = 64;
+
+	private static final Map<String, Pattern> patterns = new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest){
+			return size() > CAPACITY;
+		}
+	};
+
+	private PatternCache(){
+	}
+
+	/**
+	 * Returns the compiled pattern, compiling it on first use.
+	 * Throws PatternSyntaxException for an invalid regex.
+	 */
+	static Pattern compile(String regex, int flags){
+		String key = flags + ":" + regex;
+		synchronized(patterns){
+			Pattern pattern = patterns.get(key);
+			if(pattern == null){
+				pattern = Pattern.compile(regex, flags);
+				patterns.put(key, pattern);
+			}
+			return pattern;
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package edu.gatech.seclass.texttool;
+
+/**
+ * Prefixes each line with a fixed string.
+ */
+final class PrefixTransform implements LineTransform {
+	private final String prefix;
+
+	PrefixTransform(String prefix){
+		this.prefix = prefix;
+	}
+
+	@Override
+	public boolean isStateless(){
+		return true;
+	}
+
+	@Override
+	public int asciiGrowth(){
+		for(int i = 0; i < prefix.length(); i++){
+			if(prefix.charAt(i) >= 0x80){
+				return UNPREDICTABLE;
+			}
+		}
+		return prefix.length();
+	}
+
+	@Override
+	public void apply(CharSequence line, int start, int end, StringBuilder out){
+		out.append(prefix).append(line, start, end);
+	}
+}
@@ -0,0 +1,137 @@
+package edu.gatech.seclass.texttool;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Reads a channel on a background thread, up to DEPTH buffers ahead of the
+ * caller, so waiting for the disk, or decompressing, overlaps with work on
+ * what was read before. Buffers come from the {@link BufferPool} and go back
+ * once the caller has copied them out.
+ */
+final class ReadAheadChannel implements ReadableByteChannel {
+	static final int BUFFER_BYTES = 1 << 20;
+	static final int DEPTH = 4;
+	//Queued after the last buffer, whether the source ended or failed
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	private final ReadableByteChannel source;
+	private final ArrayBlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<ByteBuffer>(DEPTH);
+	private final Thread thread;
+	private volatile IOException failure;
+	private ByteBuffer current;
+	private boolean eof;
+	private boolean open = true;
+
+	ReadAheadChannel(ReadableByteChannel source){
+		this.source = source;
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run(){
+				readAhead();
+			}
+		}, "texttool-read-ahead");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		while(current == null || !current.hasRemaining()){
+			if(eof){
+				return -1;
+			}
+			BufferPool.release(current);
+			current = null;
+			ByteBuffer next;
+			try {
+				next = filled.take();
+			}
+			catch(InterruptedException e){
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException();
+			}
+			if(next == END){
+				eof = true;
+				if(failure != null){
+					throw failure;
+				}
+				return -1;
+			}
+			current = next;
+		}
+		int length = Math.min(dst.remaining(), current.remaining());
+		int limit = current.limit();
+		current.limit(current.position() + length);
+		dst.put(current);
+		current.limit(limit);
+		return length;
+	}
+
+	@Override
+	public boolean isOpen(){
+		return open;
+	}
+
+	/**
+	 * Stops reading ahead and closes the source.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(!open){
+			return;
+		}
+		open = false;
+		thread.interrupt();
+		try {
+			thread.join();
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			BufferPool.release(current);
+			current = null;
+			ByteBuffer left;
+			while((left = filled.poll()) != null){
+				BufferPool.release(left);
+			}
+			source.close();
+		}
+	}
+
+	private void readAhead(){
+		try {
+			int read = 0;
+			while(read >= 0){
+				ByteBuffer buffer = BufferPool.bytes(BUFFER_BYTES);
+				while(buffer.hasRemaining() && (read = source.read(buffer)) >= 0){
+					//Keep reading until full
+				}
+				buffer.flip();
+				if(buffer.hasRemaining()){
+					filled.put(buffer);
+				}
+				else {
+					BufferPool.release(buffer);
+				}
+			}
+		}
+		catch(IOException e){
+			failure = e;
+		}
+		catch(InterruptedException e){
+			//Closed early
+			return;
+		}
+		try {
+			filled.put(END);
+		}
+		catch(InterruptedException e){
+			//Closed early
+		}
+	}
+}
@@ -0,0 +1,64 @@
+package edu.gatech.seclass.texttool;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Replaces the first match of a regular expression in each line. The
+ * replacement may refer to capture groups as $n or ${name}.
+ */
+final class RegexReplaceTransform implements LineTransform {
+	private final Matcher matcher;
+	private final String replacement;
+	private final GuardedCharSequence guarded = new GuardedCharSequence();
+
+	RegexReplaceTransform(String regex, String replacement, boolean caseInsensitive){
+		this.matcher = PatternCache.compile(regex, caseInsensitive ? Pattern.CASE_INSENSITIVE : 0).matcher("");
+		this.replacement = replacement;
+	}
+
+	@Override
+	public boolean isStateless(){
+		return true;
+	}
+
+	@Override
+	public void apply(CharSequence line, int start, int end, StringBuilder out){
+		//The guard presents just the range, so anchors match at its edges
+		matcher.reset(guarded.reset(line, start, end));
+		if(matcher.find()){
+			matcher.appendReplacement(out, replacement);
+			matcher.appendTail(out);
+		}
+		else {
+			out.append(line, start, end);
+		}
+	}
+
+	/**
+	 * Throws if replacement is one Matcher.appendReplacement would reject: a
+	 * group pattern doesn't have, by number or name, or a malformed reference.
+	 */
+	static void checkReplacement(Pattern pattern, String replacement) throws TextToolException {
+		//Made optional, the pattern matches the empty string with the same groups, so the trial always runs
+		Matcher trial = optional(pattern).matcher("");
+		trial.find();
+		try {
+			trial.appendReplacement(new StringBuilder(), replacement);
+		}
+		catch(IllegalArgumentException | IndexOutOfBoundsException e){
+			throw new TextToolException(ErrorCode.INVALID_PATTERN, "-R " + replacement + ": " + e.getMessage());
+		}
+	}
+
+	private static Pattern optional(Pattern pattern){
+		try {
+			return Pattern.compile("(?:" + pattern.pattern() + ")?", pattern.flags());
+		}
+		catch(PatternSyntaxException e){
+			//A \Q quote left open runs to the end, so close it first
+			return Pattern.compile("(?:" + pattern.pattern() + "\\E)?", pattern.flags());
+		}
+	}
+}
@@ -0,0 +1,81 @@
+package edu.gatech.seclass.texttool;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands results finished out of order by several workers to one consumer in
+ * sequence order. Results sit in a ring of slots indexed by sequence number.
+ * A worker more than capacity ahead of the consumer parks until the consumer
+ * catches up, so a slow chunk holds back at most capacity finished ones
+ * instead of letting fast workers fill the heap.
+ *
+ * Nothing is locked: slots are published with volatile array writes, and the
+ * consumer and parked workers wake each other with unpark. Workers must take
+ * sequence numbers in order and hold one at a time; with a capacity of at
+ * least twice the number of workers, no two of them ever park on one slot.
+ */
+final class ReorderBuffer<T> {
+	private final AtomicReferenceArray<T> slots;
+	private final AtomicReferenceArray<Thread> waiters;
+	private final int capacity;
+	private final int mask;
+	private final Thread consumer;
+	private volatile long next;		//Sequence number the consumer takes next
+
+	/**
+	 * Creates a buffer for the given number of workers. The creating thread
+	 * is the consumer.
+	 */
+	ReorderBuffer(int workers){
+		this.capacity = Integer.highestOneBit(Math.max(1, workers) * 4 - 1);
+		this.mask = capacity - 1;
+		this.slots = new AtomicReferenceArray<T>(capacity);
+		this.waiters = new AtomicReferenceArray<Thread>(capacity);
+		this.consumer = Thread.currentThread();
+	}
+
+	/**
+	 * Publishes the result for a sequence number, first waiting while it is
+	 * capacity or more ahead of the consumer.
+	 */
+	void put(long sequence, T result) throws InterruptedException {
+		int index = (int) sequence & mask;
+		while(sequence - next >= capacity){
+			Thread self = Thread.currentThread();
+			waiters.set(index, self);
+			//Check again, the consumer may have moved on before seeing the waiter
+			if(sequence - next >= capacity){
+				LockSupport.park(this);
+			}
+			waiters.compareAndSet(index, self, null);
+			if(Thread.interrupted()){
+				throw new InterruptedException();
+			}
+		}
+		slots.set(index, result);
+		LockSupport.unpark(consumer);
+	}
+
+	/**
+	 * Returns the result for the next sequence number, waiting until it is put.
+	 */
+	T take() throws InterruptedException {
+		int index = (int) next & mask;
+		T result;
+		while((result = slots.get(index)) == null){
+			LockSupport.park(this);
+			if(Thread.interrupted()){
+				throw new InterruptedException();
+			}
+		}
+		slots.set(index, null);
+		next = next + 1;
+		//The slot is free for the sequence number capacity further on
+		Thread waiter = waiters.getAndSet(index, null);
+		if(waiter != null){
+			LockSupport.unpark(waiter);
+		}
+		return result;
+	}
+}
@@ -0,0 +1,46 @@
+package edu.gatech.seclass.texttool;
+
+/**
+ * Replaces the first occurrence of a literal search text in each line.
+ */
+final class ReplaceTransform implements LineTransform {
+	private final LiteralMatcher matcher;
+	private final String replaceText;
+
+	ReplaceTransform(String searchText, String replaceText, boolean caseInsensitive){
+		this.matcher = new LiteralMatcher(searchText, caseInsensitive);
+		this.replaceText = replaceText;
+	}
+
+	@Override
+	public boolean isStateless(){
+		return true;
+	}
+
+	//Whether or not a line matches, an ASCII replacement of the same length changes nothing
+	@Override
+	public int asciiGrowth(){
+		if(matcher.length() != replaceText.length()){
+			return UNPREDICTABLE;
+		}
+		for(int i = 0; i < replaceText.length(); i++){
+			if(replaceText.charAt(i) >= 0x80){
+				return UNPREDICTABLE;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public void apply(CharSequence line, int start, int end, StringBuilder out){
+		int index = matcher.indexOf(line, start, end);
+		if(index >= 0){
+			out.append(line, start, index)
+					.append(replaceText)
+					.append(line, index + matcher.length(), end);
+		}
+		else {
+			out.append(line, start, end);
+		}
+	}
+}
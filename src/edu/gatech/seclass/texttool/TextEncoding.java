@@ -0,0 +1,100 @@
+package edu.gatech.seclass.texttool;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * The charset an input is decoded with, plus the length of any byte order mark
+ * to skip. Auto-detection samples the first block of the (decompressed) input:
+ * a UTF-8 BOM or valid UTF-8, pure ASCII included, selects UTF-8, and anything
+ * else ISO-8859-1, which decodes every byte and so writes them back unchanged.
+ *
+ * Only ASCII compatible charsets are accepted, since lines are split on the
+ * raw '\n' byte before decoding.
+ */
+final class TextEncoding {
+	static final TextEncoding DEFAULT = new TextEncoding(StandardCharsets.UTF_8, 0);
+
+	private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+	private static final byte[] ASCII_PROBE = "\t\r\n azAZ09~".getBytes(StandardCharsets.US_ASCII);
+
+	final Charset charset;
+	final int bomLength;
+
+	private TextEncoding(Charset charset, int bomLength){
+		this.charset = charset;
+		this.bomLength = bomLength;
+	}
+
+	/**
+	 * Looks up a --charset value other than "auto". Reads nothing from the input.
+	 */
+	static TextEncoding forName(String name) throws TextToolException {
+		Charset charset = Charset.forName(name); //Throws exception if unknown
+		if(!charset.canEncode() || !Arrays.equals(ASCII_PROBE, new String(ASCII_PROBE, StandardCharsets.US_ASCII).getBytes(charset))){
+			//UTF-16 and friends would need newlines found after decoding
+			throw new TextToolException(ErrorCode.INVALID_CHARSET, "--charset " + name);
+		}
+		return new TextEncoding(charset, 0);
+	}
+
+	/**
+	 * Detects the charset from the first block of the input.
+	 */
+	static TextEncoding detect(Path file, Codec codec) throws IOException {
+		byte[] sample = new byte[LineReader.CHUNK_SIZE];
+		int length = 0;
+		try(InputStream in = codec == null ? Files.newInputStream(file) : codec.decompress(Files.newInputStream(file))){
+			int read;
+			while(length < sample.length && (read = in.read(sample, length, sample.length - length)) > 0){
+				length += read;
+			}
+		}
+		return detect(sample, length);
+	}
+
+	static TextEncoding detect(byte[] sample, int length){
+		if(length >= UTF8_BOM.length && Arrays.equals(sample, 0, UTF8_BOM.length, UTF8_BOM, 0, UTF8_BOM.length)){
+			return new TextEncoding(StandardCharsets.UTF_8, UTF8_BOM.length);
+		}
+		if(LineScanner.isAscii(ByteBuffer.wrap(sample), 0, length) || isUtf8(sample, length)){
+			//ASCII lines skip the decoder either way, so an ASCII sample still reads as UTF-8
+			return DEFAULT;
+		}
+		return new TextEncoding(StandardCharsets.ISO_8859_1, 0);
+	}
+
+	/**
+	 * Parses a --malformed value: report (abort), replace (with U+FFFD) or ignore.
+	 */
+	static CodingErrorAction parseMalformed(String action) throws TextToolException {
+		switch(action){
+			case "report":
+				return CodingErrorAction.REPORT;
+			case "replace":
+				return CodingErrorAction.REPLACE;
+			case "ignore":
+				return CodingErrorAction.IGNORE;
+			default:
+				throw new TextToolException(ErrorCode.INVALID_VALUE, "--malformed " + action);
+		}
+	}
+
+	//The sample may end part way through a character, which isn't held against it
+	private static boolean isUtf8(byte[] sample, int length){
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPORT)
+				.onUnmappableCharacter(CodingErrorAction.REPORT);
+		CharBuffer chars = CharBuffer.allocate(length);
+		return !decoder.decode(ByteBuffer.wrap(sample, 0, length), chars, false).isError();
+	}
+}
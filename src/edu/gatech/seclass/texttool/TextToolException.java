@@ -0,0 +1,81 @@
+package edu.gatech.seclass.texttool;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Path;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A failed check or run, carrying its {@link ErrorCode} and a short detail
+ * such as the offending option. Stack traces are never printed, so none is
+ * captured, which keeps rejecting a bad invocation cheap.
+ */
+final class TextToolException extends Exception {
+	private static final long serialVersionUID = 1L;
+
+	private final ErrorCode code;
+
+	TextToolException(ErrorCode code, String detail){
+		super(detail, null, false, false);
+		this.code = code;
+	}
+
+	ErrorCode code(){
+		return code;
+	}
+
+	/**
+	 * Classifies a failure to create the output file: it already exists, or
+	 * can't be created at all, e.g. in a missing directory.
+	 */
+	static TextToolException output(Path file, IOException e){
+		if(e instanceof FileAlreadyExistsException){
+			return new TextToolException(ErrorCode.OUTPUT_EXISTS, file.toString());
+		}
+		return new TextToolException(ErrorCode.OUTPUT_NOT_CREATED, file + ": " + e.getMessage());
+	}
+
+	/**
+	 * Classifies any exception a run can end with. A missing input is found
+	 * before the run and missing outputs where they are created, so a
+	 * NoSuchFileException here is just an I/O failure.
+	 */
+	static TextToolException of(Throwable e){
+		if(e instanceof TextToolException){
+			return (TextToolException) e;
+		}
+		if(e instanceof UncheckedIOException){
+			e = e.getCause();
+		}
+		ErrorCode code;
+		if(e instanceof NumberFormatException){
+			code = ErrorCode.INVALID_NUMBER;
+		}
+		else if(e instanceof PatternSyntaxException){
+			code = ErrorCode.INVALID_PATTERN;
+		}
+		else if(e instanceof IllegalCharsetNameException || e instanceof UnsupportedCharsetException){
+			code = ErrorCode.INVALID_CHARSET;
+		}
+		else if(e instanceof GuardedCharSequence.RegexTimeoutException){
+			code = ErrorCode.REGEX_TIMEOUT;
+		}
+		else if(e instanceof CharacterCodingException){
+			code = ErrorCode.MALFORMED_INPUT;
+		}
+		else if(e instanceof FileAlreadyExistsException){
+			code = ErrorCode.OUTPUT_EXISTS;
+		}
+		else if(e instanceof IOException){
+			code = ErrorCode.IO_ERROR;
+		}
+		else {
+			code = ErrorCode.INTERNAL_ERROR;
+		}
+		return new TextToolException(code, String.valueOf(e.getMessage()));
+	}
+}
@@ -0,0 +1,81 @@
+package edu.gatech.seclass.texttool;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Fuses a list of transforms into a single per-line pass, ping-ponging
+ * between two reused buffers.
+ */
+final class TransformChain {
+	private final LineTransform[] transforms;
+	private final StringBuilder first = new StringBuilder();
+	private final StringBuilder second = new StringBuilder();
+
+	TransformChain(List<LineTransform> transforms){
+		this.transforms = transforms.toArray(new LineTransform[0]);
+	}
+
+	/**
+	 * Runs line through every transform. The result is only valid until the next call.
+	 */
+	CharSequence apply(CharSequence line){
+		return apply(line, 0, line.length());
+	}
+
+	/**
+	 * Runs line[start, end) through every transform. The result is only valid
+	 * until the next call.
+	 */
+	CharSequence apply(CharSequence line, int start, int end){
+		if(transforms.length == 0 && start == 0 && end == line.length()){
+			return line;
+		}
+		StringBuilder out = first;
+		out.setLength(0);
+		if(transforms.length == 0){
+			return out.append(line, start, end);
+		}
+		transforms[0].apply(line, start, end, out);
+		for(int i = 1; i < transforms.length; i++){
+			StringBuilder in = out;
+			out = in == first ? second : first;
+			out.setLength(0);
+			transforms[i].apply(in, out);
+		}
+		return out;
+	}
+
+	//True when every transform is, see LineTransform
+	boolean isStateless(){
+		for(LineTransform transform : transforms){
+			if(!transform.isStateless()){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	//Sum over the transforms, see LineTransform
+	int asciiGrowth(){
+		int growth = 0;
+		for(LineTransform transform : transforms){
+			int step = transform.asciiGrowth();
+			if(step == LineTransform.UNPREDICTABLE){
+				return LineTransform.UNPREDICTABLE;
+			}
+			growth += step;
+		}
+		return growth;
+	}
+
+	/**
+	 * Runs every line of in through the chain, appending the results to out
+	 * with their tags unchanged.
+	 */
+	void apply(LineStore in, LineStore out) throws IOException {
+		for(int i = 0; i < in.size(); i++){
+			out.add(apply(in.get(i)), in.tag(i));
+		}
+	}
+}
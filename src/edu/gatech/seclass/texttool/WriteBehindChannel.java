@@ -0,0 +1,140 @@
+package edu.gatech.seclass.texttool;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Collects writes into large buffers and writes them to the target on a
+ * background thread, up to DEPTH buffers behind the caller, so the caller
+ * never waits for the disk, or a compressor, unless it gets that far ahead.
+ *
+ * A write failure is reported by a later write, or at the latest by close().
+ * Closing writes out everything written before it, then closes the target
+ * only when the channel owns it, so standard output stays open.
+ */
+final class WriteBehindChannel implements WritableByteChannel {
+	static final int BUFFER_BYTES = 1 << 20;
+	static final int DEPTH = 4;
+	//Queued after the last buffer
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	private final WritableByteChannel target;
+	private final boolean ownsTarget;
+	private final ArrayBlockingQueue<ByteBuffer> pending = new ArrayBlockingQueue<ByteBuffer>(DEPTH);
+	private final Thread thread;
+	private volatile IOException failure;
+	private ByteBuffer current;
+	private boolean open = true;
+
+	WriteBehindChannel(WritableByteChannel target, boolean ownsTarget){
+		this.target = target;
+		this.ownsTarget = ownsTarget;
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run(){
+				writeBehind();
+			}
+		}, "texttool-write-behind");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		if(failure != null){
+			throw failure;
+		}
+		int length = src.remaining();
+		while(src.hasRemaining()){
+			if(current == null){
+				current = BufferPool.bytes(BUFFER_BYTES);
+			}
+			int part = Math.min(src.remaining(), current.remaining());
+			int limit = src.limit();
+			src.limit(src.position() + part);
+			current.put(src);
+			src.limit(limit);
+			if(!current.hasRemaining()){
+				handOff();
+			}
+		}
+		return length;
+	}
+
+	@Override
+	public boolean isOpen(){
+		return open;
+	}
+
+	/**
+	 * Waits until everything written so far is out, then closes the target if
+	 * owned.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(!open){
+			return;
+		}
+		open = false;
+		try {
+			if(current != null && current.position() > 0){
+				handOff();
+			}
+			pending.put(END);
+			thread.join();
+		}
+		catch(InterruptedException e){
+			thread.interrupt();
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		finally {
+			BufferPool.release(current);
+			current = null;
+			if(ownsTarget){
+				target.close();
+			}
+		}
+		if(failure != null){
+			throw failure;
+		}
+	}
+
+	private void handOff() throws IOException {
+		current.flip();
+		try {
+			pending.put(current);
+		}
+		catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException();
+		}
+		current = null;
+	}
+
+	private void writeBehind(){
+		try {
+			ByteBuffer buffer;
+			while((buffer = pending.take()) != END){
+				//After a failure the rest is dropped, so the caller never blocks
+				if(failure == null){
+					try {
+						while(buffer.hasRemaining()){
+							target.write(buffer);
+						}
+					}
+					catch(IOException e){
+						failure = e;
+					}
+				}
+				BufferPool.release(buffer);
+			}
+		}
+		catch(InterruptedException e){
+			//Abandoned by its caller
+		}
+	}
+}
@@ -0,0 +1,25 @@
+package edu.gatech.seclass.texttool;
+
+import java.io.IOException;
+
+/**
+ * Writes each line the requested number of times, terminated as the line
+ * ending mode asks.
+ */
+final class WriterSink implements LineSink {
+	private final LineWriter writer;
+	private final String separator;
+	private final long copies;
+
+	WriterSink(LineWriter writer, LineEnding ending, long copies){
+		this.writer = writer;
+		this.separator = ending.fixedSeparator();
+		this.copies = copies;
+	}
+
+	@Override
+	public void accept(CharSequence line, int tag) throws IOException {
+		String lineSeparator = separator != null ? separator : LineEnding.separatorOf(tag);
+		writer.write(line, lineSeparator, copies);
+	}
+}
@@ -7,12 +7,23 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
 import java.io.*;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class MyMainTest {
@@ -333,12 +344,15 @@ public void texttoolTest1() throws Exception {
     public void texttoolTest18() throws Exception {
         String input = "alphanumeric_aBc123_AbC123_foobar!" + System.lineSeparator();
 
+        //-d is no longer capped at 10
+        String expected = input.repeat(12);
+
         File inputFile = createInputFile(input);
         String[] args = {"-d", "11", inputFile.getPath()};
         Main.main(args);
 
-        assertEquals("stderr output does not match", USAGE_TXT, errStream.toString().strip());
-        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("stdout output does not match", expected, outStream.toString());
         assertEquals("input file content not matched", input, getFileContent(inputFile.getPath()));
     }
 
@@ -375,12 +389,13 @@ public void texttoolTest1() throws Exception {
     public void texttoolTest21() throws Exception {
         String input = "alphanumeric_aBc123_AbC123_foobar!" + System.lineSeparator();
 
+        //Shifts are taken modulo 26, so -26 leaves the text unchanged
         File inputFile = createInputFile(input);
         String[] args = {"-c", "-26", inputFile.getPath()};
         Main.main(args);
 
-        assertEquals("stderr output does not match", USAGE_TXT, errStream.toString().strip());
-        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("stdout output does not match", input, outStream.toString());
         assertEquals("input file content not matched", input, getFileContent(inputFile.getPath()));
     }
 
@@ -407,8 +422,8 @@ public void texttoolTest1() throws Exception {
         String[] args = {"-c", "26", inputFile.getPath()};
         Main.main(args);
 
-        assertEquals("stderr output does not match", USAGE_TXT, errStream.toString().strip());
-        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("stdout output does not match", input, outStream.toString());
         assertEquals("input file content not matched", input, getFileContent(inputFile.getPath()));
     }
 
@@ -1416,4 +1431,1464 @@ public void texttoolTest1() throws Exception {
         assertEquals("stdout output does not match", expected, outStream.toString());
         assertEquals("input file content not matched", input, getFileContent(inputFile.getPath()));
     }
+
+    // Frame #: 84
+    @Test
+    public void texttoolTest84() throws Exception {
+        String input = "first line\r\nsecond line" + System.lineSeparator();
+
+        String expected = "first line" + System.lineSeparator() + "second line" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+
+        String[] args = {inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("stdout output does not match", expected, outStream.toString());
+        assertEquals("input file content not matched", input, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 85
+    @Test
+    public void texttoolTest85() throws Exception {
+        String longLine = "ab".repeat(100000);
+        String input = longLine + System.lineSeparator() + "short" + System.lineSeparator();
+
+        String expected = "#" + longLine + System.lineSeparator() + "#short" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+
+        String[] args = {"-f", "-p", "#", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+        assertEquals("input file content not matched", expected, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 86
+    @Test
+    public void texttoolTest86() throws Exception {
+        StringBuilder input = new StringBuilder();
+        for (int i = 1; i <= 600; i++) {
+            input.append("line").append(i).append(System.lineSeparator());
+        }
+
+        String expected = "#line300" + System.lineSeparator() +
+                "#line301" + System.lineSeparator() +
+                "#line302" + System.lineSeparator();
+
+        File inputFile = createInputFile(input.toString());
+
+        String[] args = {"--lines", "300:302", "-p", "#", inputFile.getPath()};
+        Main.main(args);
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("stdout output does not match", expected + expected, outStream.toString());
+        assertTrue("line index not saved", new File(inputFile.getPath() + ".lineidx").exists());
+        assertEquals("input file content not matched", input.toString(), getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 87
+    @Test
+    public void texttoolTest87() throws Exception {
+        String input = "alphanumeric_aBc123_AbC123_foobar!" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+
+        String[] args = {"--lines", "5:2", inputFile.getPath()};
+        Main.main(args);
+
+        assertEquals("stderr output does not match", USAGE_TXT, errStream.toString().strip());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+        assertEquals("input file content not matched", input, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 88
+    @Test
+    public void texttoolTest88() throws Exception {
+        String input = "alphanumeric_aBc123_AbC123_foobar!" + System.lineSeparator();
+
+        String expected = "#alphanumeric_aBc123_AbC123_foobar!" + System.lineSeparator();
+
+        File inputFile = createTmpFile();
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(inputFile))) {
+            out.write(input.getBytes(charset));
+        }
+
+        String[] args = {"-p", "#", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("stdout output does not match", expected, outStream.toString());
+    }
+
+    // Frame #: 89
+    @Test
+    public void texttoolTest89() throws Exception {
+        String input = "alphanumeric_aBc123_AbC123_foobar!" + System.lineSeparator();
+
+        String expected = "alphanumeric_aBc123_AbC123_foobar!" + System.lineSeparator() +
+                "alphanumeric_aBc123_AbC123_foobar!" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+        String outputFile = inputFile.getParent() + "/outputFile.txt.gz";
+
+        String[] args = {"-o", outputFile, "-d", "1", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+        try (InputStream in = new GZIPInputStream(new FileInputStream(outputFile))) {
+            assertEquals("output file content not matched", expected, new String(in.readAllBytes(), charset));
+        }
+        assertEquals("input file content not matched", input, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 90
+    @Test
+    public void texttoolTest90() throws Exception {
+        String input = "first\r\nsecond\nthird";
+
+        String expected = "#first\r\n#second\n#third";
+
+        File inputFile = createInputFile(input);
+
+        String[] args = {"-f", "--eol", "preserve", "-p", "#", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+        assertEquals("input file content not matched", expected, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 91
+    @Test
+    public void texttoolTest91() throws Exception {
+        String input = "first\r\nsecond\n";
+
+        String expected = "first\r\nfirst\r\nsecond\r\nsecond\r\n";
+
+        File inputFile = createInputFile(input);
+
+        String[] args = {"--eol", "auto", "-d", "1", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("stdout output does not match", expected, outStream.toString());
+        assertEquals("input file content not matched", input, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 92
+    @Test
+    public void texttoolTest92() throws Exception {
+        String input = "alphanumeric_aBc123_AbC123_foobar!" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+
+        String[] args = {"--eol", "cr", inputFile.getPath()};
+        Main.main(args);
+
+        assertEquals("stderr output does not match", USAGE_TXT, errStream.toString().strip());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+        assertEquals("input file content not matched", input, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 93
+    @Test
+    public void texttoolTest93() throws Exception {
+        String input = "alphanumeric_aBc123_AbC456_foobar!" + System.lineSeparator();
+
+        String expected = "alphanumeric_123aBc_AbC456_foobar!" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+
+        String[] args = {"-R", "([a-z]+)(\\d+)", "$2$1", "-i", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("stdout output does not match", expected, outStream.toString());
+        assertEquals("input file content not matched", input, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 94
+    @Test
+    public void texttoolTest94() throws Exception {
+        String input = "alphanumeric_aBc123_AbC123_foobar!" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+
+        String[] args = {"-R", "(abc)", "$2", inputFile.getPath()};
+        Main.main(args);
+
+        assertEquals("stderr output does not match", USAGE_TXT, errStream.toString().strip());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+        assertEquals("input file content not matched", input, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 95
+    @Test
+    public void texttoolTest95() throws Exception {
+        String input = "a".repeat(40) + "!" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+
+        String[] args = {"-f", "-R", "(.*a){20}$", "b", inputFile.getPath()};
+        Main.main(args);
+
+        assertEquals("stderr output does not match", USAGE_TXT, errStream.toString().strip());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+        assertEquals("input file content not matched", input, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 96
+    @Test
+    public void texttoolTest96() throws Exception {
+        String input = "Café CAFÉ café" + System.lineSeparator() + "CAFé CAFÉ" + System.lineSeparator();
+
+        String expected = "Café tea café" + System.lineSeparator() + "CAFé tea" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+
+        String[] args = {"-f", "-r", "cafÉ", "tea", "-i", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+        assertEquals("input file content not matched", expected, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 97
+    @Test
+    public void texttoolTest97() throws Exception {
+        String input = "b" + System.lineSeparator() + "a" + System.lineSeparator() + "B" + System.lineSeparator() +
+                "a" + System.lineSeparator() + "c" + System.lineSeparator() + "b" + System.lineSeparator();
+
+        String expected = "Xb" + System.lineSeparator() + "Xb" + System.lineSeparator() +
+                "Xa" + System.lineSeparator() + "Xa" + System.lineSeparator() +
+                "XB" + System.lineSeparator() + "XB" + System.lineSeparator() +
+                "Xc" + System.lineSeparator() + "Xc" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+
+        String[] args = {"-u", "-p", "X", "-d", "1", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("stdout output does not match", expected, outStream.toString());
+        assertEquals("input file content not matched", input, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 98
+    @Test
+    public void texttoolTest98() throws Exception {
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 100; j++) {
+                input.append("line").append(j).append(System.lineSeparator());
+            }
+        }
+
+        File inputFile = createInputFile(input.toString());
+
+        String[] args = {"-u", "approx", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        String[] lines = outStream.toString().split(System.lineSeparator());
+        assertTrue("duplicates should be removed", lines.length <= 100 && lines.length > 90);
+        assertEquals("first line does not match", "line0", lines[0]);
+    }
+
+    // Frame #: 99
+    @Test
+    public void texttoolTest99() throws Exception {
+        String input = "alphanumeric_aBc123_AbC123_foobar!" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+
+        String[] args = {"-u", "exactly", inputFile.getPath()};
+        Main.main(args);
+
+        assertEquals("stderr output does not match", USAGE_TXT, errStream.toString().strip());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+        assertEquals("input file content not matched", input, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 100
+    @Test
+    public void texttoolTest100() throws Exception {
+        String input = "pear" + System.lineSeparator() + "apple" + System.lineSeparator() + "Zebra" + System.lineSeparator() +
+                "pear" + System.lineSeparator() + "banana" + System.lineSeparator();
+
+        String expected = "Zebra" + System.lineSeparator() + "apple" + System.lineSeparator() +
+                "banana" + System.lineSeparator() + "pear" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+        String outputFile = inputFile.getParent() + "/outputFile.txt";
+
+        String[] args = {"-o", outputFile, "-s", "-u", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+        assertEquals("output file content not matched", expected, getFileContent(outputFile));
+        assertEquals("input file content not matched", input, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 101
+    @Test
+    public void texttoolTest101() throws Exception {
+        StringBuilder input = new StringBuilder();
+        for (int i = 200000; i > 0; i--) {
+            input.append(i % 1000).append(System.lineSeparator());
+        }
+
+        File inputFile = createInputFile(input.toString());
+
+        String[] args = {"-f", "-s", "1", "-d", "1", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        String[] lines = getFileContent(inputFile.getPath()).split(System.lineSeparator());
+        assertEquals("line count does not match", 400000, lines.length);
+        for (int i = 1; i < lines.length; i++) {
+            assertTrue("lines out of order at " + i, lines[i - 1].compareTo(lines[i]) <= 0);
+        }
+    }
+
+    // Frame #: 102
+    @Test
+    public void texttoolTest102() throws Exception {
+        String input = "INFO start" + System.lineSeparator() + "ERROR disk full" + System.lineSeparator() +
+                "WARN slow" + System.lineSeparator() + "ERROR ignored: test" + System.lineSeparator() +
+                "INFO stop" + System.lineSeparator();
+
+        String expected = "> ERROR disk full" + System.lineSeparator() + "> WARN slow" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+
+        String[] args = {"--include", "ERROR", "WARN", "--exclude", "test", "-p", "> ", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("stdout output does not match", expected, outStream.toString());
+        assertEquals("input file content not matched", input, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 103
+    @Test
+    public void texttoolTest103() throws Exception {
+        String input = "id=12 ok" + System.lineSeparator() + "id=x ok" + System.lineSeparator() +
+                "ID=7 ok" + System.lineSeparator();
+
+        String expected = "12" + System.lineSeparator() + "7" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+
+        String[] args = {"--include", "^id=\\d+", "-R", "^id=(\\d+) ok$", "$1", "-i", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("stdout output does not match", expected, outStream.toString());
+        assertEquals("input file content not matched", input, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 104
+    @Test
+    public void texttoolTest104() throws Exception {
+        String input = "id,name,city" + System.lineSeparator() + "1,alice,paris" + System.lineSeparator() +
+                "2,bob" + System.lineSeparator() + "3,,rome,extra" + System.lineSeparator();
+
+        String expected = "id,#obnf,#djuz" + System.lineSeparator() + "1,#bmjdf,#qbsjt" + System.lineSeparator() +
+                "2,#cpc" + System.lineSeparator() + "3,#,#spnf,extra" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+
+        String[] args = {"--fields", "2-3", "--delimiter", ",", "-p", "#", "-c", "1", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("stdout output does not match", expected, outStream.toString());
+        assertEquals("input file content not matched", input, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 105
+    @Test
+    public void texttoolTest105() throws Exception {
+        String input = "a\tb" + System.lineSeparator();
+        File inputFile = createInputFile(input);
+
+        String[] args = {"--fields", "0-2", "-p", "#", inputFile.getPath()};
+        Main.main(args);
+
+        assertEquals("stderr output does not match", USAGE_TXT, errStream.toString().strip());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+    }
+
+    // Frame #: 106
+    @Test
+    public void texttoolTest106() throws Exception {
+        String input = "a,b" + System.lineSeparator();
+        File inputFile = createInputFile(input);
+
+        String[] args = {"--delimiter", ",", "-p", "#", inputFile.getPath()};
+        Main.main(args);
+
+        assertEquals("stderr output does not match", USAGE_TXT, errStream.toString().strip());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+    }
+
+    // Frame #: 107
+    @Test
+    public void texttoolTest107() throws Exception {
+        Charset latin1 = StandardCharsets.ISO_8859_1;
+        String input = "caf\u00e9 cr\u00e8me" + System.lineSeparator() + "plain" + System.lineSeparator();
+
+        String expected = "> caf\u00e9 cr\u00e8me" + System.lineSeparator() + "> plain" + System.lineSeparator();
+
+        File inputFile = createTmpFile();
+        Files.write(inputFile.toPath(), input.getBytes(latin1));
+
+        String[] args = {"-f", "--charset", "auto", "-p", "> ", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+        assertEquals("input file content not matched", expected, new String(Files.readAllBytes(inputFile.toPath()), latin1));
+    }
+
+    // Frame #: 108
+    @Test
+    public void texttoolTest108() throws Exception {
+        byte[] input = ("ok" + System.lineSeparator() + "bad \u00ff byte" + System.lineSeparator()).getBytes(StandardCharsets.ISO_8859_1);
+
+        String expected = "#ok" + System.lineSeparator() + "#bad \ufffd byte" + System.lineSeparator();
+
+        File inputFile = createTmpFile();
+        Files.write(inputFile.toPath(), input);
+
+        String[] strict = {"-f", "-p", "#", inputFile.getPath()};
+        Main.main(strict);
+
+        assertEquals("stderr output does not match", USAGE_TXT, errStream.toString().strip());
+        assertTrue("input file should be unchanged", Arrays.equals(input, Files.readAllBytes(inputFile.toPath())));
+
+        errStream.reset();
+        String[] lenient = {"-f", "--malformed", "replace", "-p", "#", inputFile.getPath()};
+        Main.main(lenient);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("input file content not matched", expected, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 109
+    @Test
+    public void texttoolTest109() throws Exception {
+        String input = "\ufeffname" + System.lineSeparator() + "value" + System.lineSeparator();
+
+        String expected = "\ufeff1:name" + System.lineSeparator() + "1:value" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+
+        String[] args = {"-f", "--charset", "auto", "-p", "1:", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("input file content not matched", expected, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 110
+    @Test
+    public void texttoolTest110() throws Exception {
+        String input = "alphanumeric" + System.lineSeparator();
+        File inputFile = createInputFile(input);
+
+        String[] args = {"--charset", "UTF-16", "-p", "#", inputFile.getPath()};
+        Main.main(args);
+
+        assertEquals("stderr output does not match", USAGE_TXT, errStream.toString().strip());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+        assertEquals("input file content not matched", input, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 111
+    @Test
+    public void texttoolTest111() throws Exception {
+        String input = "alphanumeric" + System.lineSeparator();
+        File inputFile = createInputFile(input);
+
+        String[] args = {"-d", "0", inputFile.getPath()};
+        int status = Main.run(args);
+
+        assertEquals("exit status does not match", 64, status);
+        assertEquals("stderr output does not match", USAGE_TXT, errStream.toString().strip());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+    }
+
+    // Frame #: 112
+    @Test
+    public void texttoolTest112() throws Exception {
+        //Arguments are checked before the file, so a bad option wins over a missing input
+        String[] args = {"--exit-codes", "-c", "abc", "the_wrong_file_name"};
+        int status = Main.run(args);
+
+        assertEquals("exit status does not match", 64, status);
+        assertEquals("stderr output does not match", "texttool: INVALID_NUMBER: -c abc" + System.lineSeparator() + USAGE_TXT,
+                errStream.toString().strip());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+    }
+
+    // Frame #: 113
+    @Test
+    public void texttoolTest113() throws Exception {
+        String input = "no final newline";
+        File inputFile = createInputFile(input);
+
+        String[] missing = {"--exit-codes", "-p", "#", "the_wrong_file_name"};
+        assertEquals("exit status does not match", 66, Main.run(missing));
+
+        errStream.reset();
+        String[] unterminated = {"--exit-codes", "-p", "#", inputFile.getPath()};
+        assertEquals("exit status does not match", 65, Main.run(unterminated));
+        assertTrue("stderr output does not match", errStream.toString().startsWith("texttool: MISSING_FINAL_NEWLINE: "));
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+        assertEquals("input file content not matched", input, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 114
+    @Test
+    public void texttoolTest114() throws Exception {
+        String input = "abc" + System.lineSeparator() + "xyz" + System.lineSeparator();
+
+        String expected = "hij" + System.lineSeparator() + "efg" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+
+        //7 + 26 * 10^30, reduced without overflowing
+        String[] args = {"-c", "26000000000000000000000000000007", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("stdout output does not match", expected, outStream.toString());
+    }
+
+    // Frame #: 115
+    @Test
+    public void texttoolTest115() throws Exception {
+        String input = "short" + System.lineSeparator() + "x".repeat(2000) + System.lineSeparator();
+
+        String expected = ("#short" + System.lineSeparator()).repeat(5001) +
+                ("#" + "x".repeat(2000) + System.lineSeparator()).repeat(5001);
+
+        File inputFile = createInputFile(input);
+        String outputFile = inputFile.getParent() + "/outputFile.txt";
+
+        String[] args = {"-o", outputFile, "-p", "#", "-d", "5000", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("output file content not matched", expected, getFileContent(outputFile));
+    }
+
+    //Plugin operation for frame 116: reverses each line, or only lines longer than its parameter
+    public static class ReverseOperation implements Operation {
+        @Override
+        public String flag() {
+            return "--reverse";
+        }
+
+        @Override
+        public int parameterCount() {
+            return 1;
+        }
+
+        @Override
+        public void validate(List<String> parameters) {
+            Integer.parseInt(parameters.get(0));
+        }
+
+        @Override
+        public LineTransform create(List<String> parameters) {
+            int minLength = Integer.parseInt(parameters.get(0));
+            return new LineTransform() {
+                @Override
+                public void apply(CharSequence line, int start, int end, StringBuilder out) {
+                    if (end - start > minLength) {
+                        out.append(new StringBuilder(line.subSequence(start, end)).reverse());
+                    } else {
+                        out.append(line, start, end);
+                    }
+                }
+            };
+        }
+    }
+
+    //Plugin operation for frames 146 and 147: fails with an Error, not an Exception, on lines containing "boom"
+    public static class FailingOperation implements Operation {
+        @Override
+        public String flag() {
+            return "--fail";
+        }
+
+        @Override
+        public int parameterCount() {
+            return 0;
+        }
+
+        @Override
+        public void validate(List<String> parameters) {
+        }
+
+        @Override
+        public LineTransform create(List<String> parameters) {
+            return new LineTransform() {
+                @Override
+                public void apply(CharSequence line, int start, int end, StringBuilder out) {
+                    if (line.subSequence(start, end).toString().contains("boom")) {
+                        throw new AssertionError("boom");
+                    }
+                    out.append(line, start, end);
+                }
+
+                @Override
+                public boolean isStateless() {
+                    return true;
+                }
+            };
+        }
+    }
+
+    private ClassLoader withOperationPlugin() throws Exception {
+        return withOperationPlugin(ReverseOperation.class);
+    }
+
+    private ClassLoader withOperationPlugin(Class<? extends Operation> plugin) throws Exception {
+        File root = temporaryFolder.newFolder();
+        File services = new File(root, "META-INF/services");
+        services.mkdirs();
+        Files.writeString(new File(services, Operation.class.getName()).toPath(), plugin.getName());
+        ClassLoader original = Thread.currentThread().getContextClassLoader();
+        Thread.currentThread().setContextClassLoader(new URLClassLoader(new URL[] {root.toURI().toURL()}, getClass().getClassLoader()));
+        return original;
+    }
+
+    // Frame #: 116
+    @Test
+    public void texttoolTest116() throws Exception {
+        String input = "abc" + System.lineSeparator() + "a" + System.lineSeparator();
+
+        String expected = "cb#" + System.lineSeparator() + "#" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+        ClassLoader original = withOperationPlugin();
+        try {
+            //Plugin operations run after the built-in ones, so the prefix is reversed too
+            String[] args = {"--reverse", "2", "-p", "#", "-r", "a", "", inputFile.getPath()};
+            Main.main(args);
+        } finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("stdout output does not match", expected, outStream.toString());
+    }
+
+    // Frame #: 117
+    @Test
+    public void texttoolTest117() throws Exception {
+        String input = "abc" + System.lineSeparator();
+        File inputFile = createInputFile(input);
+
+        ClassLoader original = withOperationPlugin();
+        int status;
+        try {
+            String[] args = {"--exit-codes", "--reverse", "long", inputFile.getPath()};
+            status = Main.run(args);
+        } finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+
+        assertEquals("exit status does not match", 64, status);
+        assertTrue("stderr output does not match", errStream.toString().startsWith("texttool: INVALID_VALUE: --reverse"));
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+    }
+
+    // Frame #: 118
+    @Test
+    public void texttoolTest118() throws Exception {
+        String input = "abc cab" + System.lineSeparator() + "Hello World" + System.lineSeparator();
+
+        String expected = "> Xcd dbc" + System.lineSeparator() + "> Ifmmp Xpsme" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+        File jobFile = createInputFile("# replace, shift, then replace again" + System.lineSeparator() +
+                "replace a b" + System.lineSeparator() +
+                "encode 1" + System.lineSeparator() +
+                System.lineSeparator() +
+                "replace -i C X" + System.lineSeparator() +
+                "prefix \"> \"" + System.lineSeparator());
+
+        String[] args = {"--job", jobFile.getPath(), inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("stdout output does not match", expected, outStream.toString());
+    }
+
+    // Frame #: 119
+    @Test
+    public void texttoolTest119() throws Exception {
+        String input = "abc" + System.lineSeparator();
+        File inputFile = createInputFile(input);
+        File jobFile = createInputFile("replace a b" + System.lineSeparator() + "encode" + System.lineSeparator());
+
+        String[] invalid = {"--exit-codes", "--job", jobFile.getPath(), inputFile.getPath()};
+        assertEquals("exit status does not match", 64, Main.run(invalid));
+        assertTrue("stderr output does not match", errStream.toString().startsWith("texttool: PARAMETER_COUNT: --job line 2: encode"));
+
+        errStream.reset();
+        String[] conflicting = {"--job", jobFile.getPath(), "-p", "#", inputFile.getPath()};
+        Main.main(conflicting);
+
+        assertEquals("stderr output does not match", USAGE_TXT, errStream.toString().strip());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+    }
+
+    // Frame #: 120
+    @Test
+    public void texttoolTest120() throws Exception {
+        String input = "abc" + System.lineSeparator() + "xyz" + System.lineSeparator() +
+                "abcabc" + System.lineSeparator() + "nothing" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+        String outputFile = inputFile.getParent() + "/outputFile.txt";
+
+        String[] args = {"--estimate", "-o", outputFile, "-r", "abc", "ab", "-p", "#", "-d", "2", inputFile.getPath()};
+        Main.main(args);
+
+        //Small input is measured exactly: each line gains the prefix, abc lines lose a char, then 3 copies
+        long outputBytes = 3 * (input.length() + 4 - 2);
+        String report = outStream.toString();
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertTrue("line count not reported", report.contains("lines: 4" + System.lineSeparator()));
+        assertTrue("output size not reported", report.contains("output bytes: " + outputBytes + System.lineSeparator()));
+        assertTrue("throughput not reported", report.contains("throughput MB/s: "));
+        assertTrue("output file should not exist", !new File(outputFile).exists());
+        assertEquals("input file content not matched", input, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 121
+    @Test
+    public void texttoolTest121() throws Exception {
+        //Over 8 MB, so the parallel run splits it into several chunks
+        String block = "line one" + System.lineSeparator() + "second, longer line" + System.lineSeparator();
+        String input = block.repeat(400000);
+
+        String first = "#mjof pof" + System.lineSeparator();
+        String second = "#tfdpoe, mpohfs mjof" + System.lineSeparator();
+        String expected = (first + first + second + second).repeat(400000);
+
+        File inputFile = createInputFile(input);
+        String outputFile = inputFile.getParent() + "/outputFile.txt";
+
+        String[] args = {"-j", "4", "-o", outputFile, "-p", "#", "-c", "1", "-d", "1", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+        assertEquals("output file size not matched", expected.length(), new File(outputFile).length());
+        assertEquals("output file content not matched", expected, getFileContent(outputFile));
+    }
+
+    // Frame #: 122
+    @Test
+    public void texttoolTest122() throws Exception {
+        //Non-ASCII text can't be sized ahead, so -j writes it through the reorder buffer
+        String input = "caf\u00e9" + System.lineSeparator() + "plain" + System.lineSeparator();
+
+        String expected = "#dbgh" + System.lineSeparator() + "#qmbjo" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+
+        String[] args = {"-f", "-j", "-p", "#", "-c", "1", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("input file content not matched", expected, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 123
+    @Test
+    public void texttoolTest123() throws Exception {
+        //Several chunks, filtered and resized, must still come out in input order
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for(int i = 0; i < 200000; i++){
+            input.append("row ").append(i).append(" of data").append(System.lineSeparator());
+            input.append("skip ").append(i).append(System.lineSeparator());
+            expected.append("\u00bb row ").append(i).append(" of information").append(System.lineSeparator());
+        }
+
+        File inputFile = createInputFile(input.toString());
+        String outputFile = inputFile.getParent() + "/outputFile.txt";
+
+        String[] args = {"-j", "3", "-o", outputFile, "--exclude", "skip", "-R", "d(a)ta", "inform$1tion", "-p", "\u00bb ",
+                inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("output file content not matched", expected.toString(), getFileContent(outputFile));
+    }
+
+    // Frame #: 124
+    @Test
+    public void texttoolTest124() throws Exception {
+        //The byte order mark is kept once, ahead of the first chunk
+        String input = "\ufeffname" + System.lineSeparator() + "value" + System.lineSeparator();
+
+        String expected = "\ufeff1:name" + System.lineSeparator() + "1:value" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+
+        String[] args = {"-f", "-j", "2", "--charset", "auto", "--include", "a", "-p", "1:", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("input file content not matched", expected, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 125
+    @Test
+    public void texttoolTest125() throws Exception {
+        //Every chunk reuses the buffers of the one before, and all are handed back
+        String block = "keep this line" + System.lineSeparator() + "drop" + System.lineSeparator();
+        String input = block.repeat(150000);
+
+        String expected = ("> keep this line" + System.lineSeparator()).repeat(150000);
+
+        File inputFile = createInputFile(input);
+        String outputFile = inputFile.getParent() + "/outputFile.txt";
+
+        String[] args = {"--stats", "-j", "2", "-o", outputFile, "--include", "keep", "-p", "> ", inputFile.getPath()};
+        Main.main(args);
+
+        String stats = errStream.toString();
+        assertTrue("pool hit rate not reported", stats.contains("pool hit rate: "));
+        assertTrue("pool was never hit", !stats.contains("pool hit rate: 0.0%"));
+        assertTrue("buffers not handed back", stats.contains("buffers outstanding: 0 ("));
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+        assertEquals("output file content not matched", expected, getFileContent(outputFile));
+    }
+
+    // Frame #: 126
+    @Test
+    public void texttoolTest126() throws Exception {
+        //Large enough to be read ahead and written behind on threads of their own
+        String input = ("read ahead" + System.lineSeparator() + "write behind" + System.lineSeparator()).repeat(300000);
+
+        String expected = ("> read ahead" + System.lineSeparator() + "> write behind" + System.lineSeparator()).repeat(300000);
+
+        File inputFile = createInputFile(input);
+
+        String[] args = {"-f", "-p", "> ", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+        assertEquals("input file content not matched", expected, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 127
+    @Test
+    public void texttoolTest127() throws Exception {
+        //Compressed input has no offsets, but the read-ahead thread still cuts it into chunks for -j
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for(int i = 0; i < 300000; i++){
+            input.append("entry ").append(i).append(System.lineSeparator());
+            if(!String.valueOf(i).contains("7")){
+                expected.append("#entry ").append(i).append(System.lineSeparator());
+            }
+        }
+
+        File inputFile = createTmpFile();
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(inputFile))) {
+            out.write(input.toString().getBytes(charset));
+        }
+
+        String[] args = {"-j", "2", "-p", "#", "--exclude", "7", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("stdout output does not match", expected.toString(), outStream.toString());
+    }
+
+    // Frame #: 128
+    @Test
+    public void texttoolTest128() throws Exception {
+        //Reads and writes bypass the page cache in whole blocks; the output still ends where it should
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for(int i = 1; i <= 100000; i++){
+            input.append("line ").append(i).append(System.lineSeparator());
+            if(i >= 5000){
+                expected.append("#line ").append(i).append(System.lineSeparator());
+            }
+        }
+
+        File inputFile = createInputFile(input.toString());
+        String outputFile = inputFile.getParent() + "/outputFile.txt";
+
+        String[] args = {"--direct", "-o", outputFile, "--lines", "5000:", "-p", "#", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+        assertEquals("output file content not matched", expected.toString(), getFileContent(outputFile));
+        assertEquals("input file content not matched", input.toString(), getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 129
+    @Test
+    public void texttoolTest129() throws Exception {
+        //Every shift gets its own output, named after it, from one pass
+        String input = "Hello, World!" + System.lineSeparator() +
+                "abc xyz" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+        String outputFile = inputFile.getParent() + "/outputFile.txt";
+
+        String[] args = {"-c", "1,-1", "-o", outputFile, inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+        assertEquals("output file content not matched", "Ifmmp, Xpsme!" + System.lineSeparator() +
+                "bcd yza" + System.lineSeparator(), getFileContent(inputFile.getParent() + "/outputFile.1.txt"));
+        assertEquals("output file content not matched", "Gdkkn, Vnqkc!" + System.lineSeparator() +
+                "zab wxy" + System.lineSeparator(), getFileContent(inputFile.getParent() + "/outputFile.-1.txt"));
+        assertFalse("unshifted output should not exist", Files.exists(Paths.get(outputFile)));
+        assertEquals("input file content not matched", input, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 130
+    @Test
+    public void texttoolTest130() throws Exception {
+        //Scores all 26 shifts from one scan; shifting back by 3 decodes text shifted by 3
+        String input = "Wkh txlfn eurzq ira mxpsv ryhu wkh odcb grj zkloh wkh udlq lq Vsdlq vwdbv pdlqob rq wkh sodlq." +
+                System.lineSeparator() +
+                "Lw zdv wkh ehvw ri wlphv, lw zdv wkh zruvw ri wlphv, lw zdv wkh djh ri zlvgrp." + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+
+        String[] args = {"--analyze", inputFile.getPath()};
+        Main.main(args);
+
+        String[] lines = outStream.toString().split(System.lineSeparator());
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("letters: 133", lines[0]);
+        assertEquals("best shift: 23", lines[1]);
+        assertTrue("best shift should be listed first", lines[2].startsWith("shift 23: "));
+        assertEquals("every shift should be scored", 28, lines.length);
+        assertEquals("input file content not matched", input, getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 131
+    @Test
+    public void texttoolTest131() throws Exception {
+        //Several shifts need an output file name to derive theirs from
+        File inputFile = createInputFile("abc" + System.lineSeparator());
+
+        String[] args = {"-c", "1,2", inputFile.getPath()};
+        Main.main(args);
+
+        assertEquals("stderr output does not match", USAGE_TXT, errStream.toString().strip());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+    }
+
+    // Frame #: 132
+    @Test
+    public void texttoolTest132() throws Exception {
+        //Each output section gets the shared steps, then its own, from one read of the input
+        StringBuilder input = new StringBuilder();
+        StringBuilder prefixed = new StringBuilder();
+        StringBuilder encoded = new StringBuilder();
+        for(int i = 0; i < 20000; i++){
+            input.append("old line ").append(i).append(System.lineSeparator());
+            if(!String.valueOf(i).contains("7")){
+                prefixed.append("> new line ").append(i).append(System.lineSeparator());
+                encoded.append("qhz olqh ").append(i).append(System.lineSeparator());
+            }
+        }
+
+        File inputFile = createInputFile(input.toString());
+        String prefixedFile = inputFile.getParent() + "/prefixed.txt";
+        String encodedFile = inputFile.getParent() + "/encoded.txt.gz";
+        File jobFile = createInputFile("replace old new" + System.lineSeparator() +
+                "output " + prefixedFile + System.lineSeparator() +
+                "prefix \"> \"" + System.lineSeparator() +
+                "output " + encodedFile + System.lineSeparator() +
+                "encode 3" + System.lineSeparator());
+
+        String[] args = {"--job", jobFile.getPath(), "--exclude", "7", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+        assertEquals("output file content not matched", prefixed.toString(), getFileContent(prefixedFile));
+        try (InputStream in = new GZIPInputStream(new FileInputStream(encodedFile))) {
+            assertEquals("output file content not matched", encoded.toString(), new String(in.readAllBytes(), charset));
+        }
+        assertEquals("input file content not matched", input.toString(), getFileContent(inputFile.getPath()));
+    }
+
+    // Frame #: 133
+    @Test
+    public void texttoolTest133() throws Exception {
+        //A job naming its outputs can't also take -o, and an input error leaves no output behind
+        File inputFile = createInputFile("abc" + System.lineSeparator() + "def");
+        String first = inputFile.getParent() + "/first.txt";
+        String second = inputFile.getParent() + "/second.txt";
+        File jobFile = createInputFile("output " + first + System.lineSeparator() +
+                "output " + second + System.lineSeparator() + "prefix #" + System.lineSeparator());
+
+        String[] conflicting = {"--exit-codes", "--job", jobFile.getPath(), "-o", inputFile.getParent() + "/out.txt", inputFile.getPath()};
+        assertEquals("exit status does not match", 64, Main.run(conflicting));
+
+        String[] unterminated = {"--exit-codes", "--job", jobFile.getPath(), inputFile.getPath()};
+        assertEquals("exit status does not match", 65, Main.run(unterminated));
+        assertFalse("output should be deleted", Files.exists(Paths.get(first)));
+        assertFalse("output should be deleted", Files.exists(Paths.get(second)));
+    }
+
+    // Frame #: 134
+    @Test
+    public void texttoolTest134() throws Exception {
+        //-f rewrites the file behind a symlink in place, keeping its permissions and hard links
+        String input = "abc" + System.lineSeparator() + "def" + System.lineSeparator();
+        String expected = "#abc" + System.lineSeparator() + "#def" + System.lineSeparator();
+
+        File inputFile = createInputFile(input);
+        Files.setPosixFilePermissions(inputFile.toPath(), PosixFilePermissions.fromString("rw-r-----"));
+        Path link = Paths.get(inputFile.getParent(), "link.txt");
+        Files.createSymbolicLink(link, inputFile.toPath());
+        Path hardLink = Paths.get(inputFile.getParent(), "hardlink.txt");
+        Files.createLink(hardLink, inputFile.toPath());
+
+        String[] args = {"-f", "-p", "#", link.toString()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+        assertTrue("symlink should stay a symlink", Files.isSymbolicLink(link));
+        assertEquals("input file content not matched", expected, getFileContent(inputFile.getPath()));
+        assertEquals("hard link content not matched", expected, getFileContent(hardLink.toString()));
+        assertEquals("permissions should be kept", "rw-r-----",
+                PosixFilePermissions.toString(Files.getPosixFilePermissions(inputFile.toPath())));
+    }
+
+    // Frame #: 135
+    @Test
+    public void texttoolTest135() throws Exception {
+        //Replacements Matcher would reject at the first match fail before anything is written
+        File inputFile = createInputFile("foo" + System.lineSeparator());
+
+        for(String replacement : new String[] {"$x", "${nope}", "$2", "tail$"}){
+            errStream.reset();
+            String[] args = {"--exit-codes", "-R", "(o)", replacement, inputFile.getPath()};
+            assertEquals("exit status does not match", 64, Main.run(args));
+            assertTrue("stderr output does not match", errStream.toString().startsWith("texttool: INVALID_PATTERN: -R " + replacement));
+        }
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+
+        String[] named = {"-R", "(?<letter>o)", "${letter}0", inputFile.getPath()};
+        Main.main(named);
+        assertEquals("stdout output does not match", "fo0o" + System.lineSeparator(), outStream.toString());
+    }
+
+    // Frame #: 136
+    @Test
+    public void texttoolTest136() throws Exception {
+        //Huge and open-ended field ranges cost nothing per field number
+        String input = "a,b,c,d" + System.lineSeparator();
+        File inputFile = createInputFile(input);
+
+        String[] huge = {"--fields", "3-2147483647", "--delimiter", ",", "-p", "#", inputFile.getPath()};
+        Main.main(huge);
+        String[] open = {"--fields", "2-,1-1000000000", "--delimiter", ",", "-c", "1", inputFile.getPath()};
+        Main.main(open);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("stdout output does not match", "a,b,#c,#d" + System.lineSeparator() +
+                "b,c,d,e" + System.lineSeparator(), outStream.toString());
+    }
+
+    // Frame #: 137
+    @Test
+    public void texttoolTest137() throws Exception {
+        //Early start lines are scanned to; later ones index the file only as far as they need
+        StringBuilder input = new StringBuilder();
+        for (int i = 1; i <= 3000; i++) {
+            input.append("line").append(i).append(System.lineSeparator());
+        }
+        File inputFile = createInputFile(input.toString());
+        File sidecar = new File(inputFile.getPath() + ".lineidx");
+
+        Main.main(new String[] {"--lines", "2:3", inputFile.getPath()});
+        assertFalse("line index should not be built", sidecar.exists());
+
+        Main.main(new String[] {"--lines", "600:601", inputFile.getPath()});
+        long partial = sidecar.length();
+        Main.main(new String[] {"--lines", "2900:2901", inputFile.getPath()});
+        assertTrue("line index should be extended", sidecar.length() > partial);
+        Main.main(new String[] {"--lines", "600:601", inputFile.getPath()});
+
+        String nl = System.lineSeparator();
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("stdout output does not match", "line2" + nl + "line3" + nl + "line600" + nl + "line601" + nl +
+                "line2900" + nl + "line2901" + nl + "line600" + nl + "line601" + nl, outStream.toString());
+    }
+
+    // Frame #: 138
+    @Test
+    public void texttoolTest138() throws Exception {
+        //The Bloom filter is sized for the decompressed input, so it drops about 1% of unique lines, not far more
+        StringBuilder input = new StringBuilder();
+        int lines = 200000;
+        for(int i = 0; i < lines; i++){
+            input.append(String.format("unique line number %08d of many", i)).append(System.lineSeparator());
+        }
+        File inputFile = createTmpFile();
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(inputFile))) {
+            out.write(input.toString().getBytes(charset));
+        }
+
+        String[] args = {"-u", "approx", inputFile.getPath()};
+        Main.main(args);
+
+        int kept = outStream.toString().split(System.lineSeparator()).length;
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertTrue("too many unique lines dropped: " + (lines - kept), kept >= lines * 0.97);
+    }
+
+    // Frame #: 139
+    @Test
+    public void texttoolTest139() throws Exception {
+        //A lone carriage return is part of the line, not a line break; one before \n makes a \r\n terminator
+        String input = "one\rtwo" + System.lineSeparator() + "three\r\r" + System.lineSeparator();
+        File inputFile = createInputFile(input);
+
+        String[] args = {"-p", "#", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("stdout output does not match", "#one\rtwo" + System.lineSeparator() +
+                "#three\r" + System.lineSeparator(), outStream.toString());
+    }
+
+    // Frame #: 140
+    @Test
+    public void texttoolTest140() throws Exception {
+        //With a one block memory limit the store spills to a mapped file; every line must read back as added
+        List<String> lines = new ArrayList<String>();
+        for(int i = 0; i < 40000; i++){
+            lines.add("line " + i + (i % 7 == 0 ? " \u00e9\u4e2d\ud83d\ude00" : "") + (i % 3 == 0 ? "" : " padding"));
+        }
+        StringBuilder huge = new StringBuilder();
+        while(huge.length() <= LineStore.BLOCK_SIZE){
+            huge.append("a line longer than a block \u00fc ");
+        }
+        lines.add(20000, huge.toString());
+        lines.add("");
+
+        try (LineStore store = new LineStore(LineStore.BLOCK_SIZE, charset)) {
+            for(int i = 0; i < lines.size(); i++){
+                byte[] bytes = lines.get(i).getBytes(charset);
+                int index;
+                if(i % 2 == 0){
+                    index = store.add(lines.get(i), i % 4);
+                }
+                else {
+                    //Already encoded lines go through the other add, from the middle of a buffer
+                    ByteBuffer src = ByteBuffer.allocate(bytes.length + 4);
+                    src.position(2);
+                    src.put(bytes);
+                    index = store.add(src, 2, 2 + bytes.length, i % 4);
+                }
+                assertEquals("index does not match", i, index);
+            }
+
+            assertEquals("size does not match", lines.size(), store.size());
+            for(int i = 0; i < lines.size(); i++){
+                assertEquals("line " + i + " does not match", lines.get(i), store.get(i).toString());
+                assertEquals("bytes of line " + i + " do not match", ByteBuffer.wrap(lines.get(i).getBytes(charset)), store.bytes(i));
+                assertEquals("tag of line " + i + " does not match", i % 4, store.tag(i));
+            }
+        }
+    }
+
+    // Frame #: 141
+    @Test
+    public void texttoolTest141() throws Exception {
+        //Running a whole store through a chain gives the same lines as running them one at a time
+        List<String> lines = new ArrayList<String>();
+        for(int i = 0; i < 50000; i++){
+            lines.add("Line " + i + " of the Zebra \u00e9" + (i % 5 == 0 ? "" : " xyz"));
+        }
+        TransformChain batch = new TransformChain(Arrays.<LineTransform>asList(new PrefixTransform("> "), new EncodeTransform(3)));
+        TransformChain single = new TransformChain(Arrays.<LineTransform>asList(new PrefixTransform("> "), new EncodeTransform(3)));
+
+        try (LineStore in = new LineStore(0, charset); LineStore out = new LineStore(0, charset)) {
+            for(int i = 0; i < lines.size(); i++){
+                in.add(lines.get(i), i % 3);
+            }
+            batch.apply(in, out);
+
+            assertEquals("size does not match", lines.size(), out.size());
+            for(int i = 0; i < lines.size(); i++){
+                assertEquals("line " + i + " does not match", single.apply(lines.get(i)).toString(), out.get(i).toString());
+                assertEquals("tag of line " + i + " does not match", i % 3, out.tag(i));
+            }
+        }
+    }
+
+    // Frame #: 142
+    @Test
+    public void texttoolTest142() throws Exception {
+        //Shifts equal modulo 26 would write the same text to two files, so they are rejected like a repeated shift
+        File inputFile = createInputFile("abc" + System.lineSeparator());
+        String[] lists = {"1,+1", "1,27", "-1,25", "0,26"};
+
+        for(String list : lists){
+            File outFile = new File(temporaryFolder.getRoot(), "out.txt");
+            String[] args = {"-c", list, "-o", outFile.getPath(), inputFile.getPath()};
+            errStream.reset();
+            Main.main(args);
+
+            assertEquals("stderr output does not match for -c " + list, USAGE_TXT, errStream.toString().strip());
+            assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+            assertEquals("no output should be written for -c " + list, 1, temporaryFolder.getRoot().list().length);
+        }
+    }
+
+    // Frame #: 143
+    @Test
+    public void texttoolTest143() throws Exception {
+        //Compressed input can't be checked up front, but its unterminated last line must never be written
+        StringBuilder input = new StringBuilder();
+        for(int i = 0; i < 100000; i++){
+            input.append("line ").append(i).append(System.lineSeparator());
+        }
+        input.append("unterminated tail");
+        File inputFile = createTmpFile();
+        try (OutputStream out = new GZIPOutputStream(new FileOutputStream(inputFile))) {
+            out.write(input.toString().getBytes(charset));
+        }
+
+        String[] args = {"--exit-codes", "-p", "#", inputFile.getPath()};
+        assertEquals("exit status does not match", 65, Main.run(args));
+        assertTrue("stderr output does not match", errStream.toString().startsWith("texttool: MISSING_FINAL_NEWLINE: "));
+        assertFalse("the unterminated line should not be written", outStream.toString().contains("unterminated tail"));
+
+        errStream.reset();
+        File outFile = new File(temporaryFolder.getRoot(), "out.txt");
+        String[] toFile = {"--exit-codes", "-p", "#", "-o", outFile.getPath(), inputFile.getPath()};
+        assertEquals("exit status does not match", 65, Main.run(toFile));
+        assertFalse("output file should be removed", outFile.exists());
+    }
+
+    // Frame #: 144
+    @Test(timeout = 20000)
+    public void texttoolTest144() throws Exception {
+        //Catastrophic backtracking on a long line is stopped by the capped budget, not after billions of reads
+        StringBuilder line = new StringBuilder();
+        for(int i = 0; i < 100000; i++){
+            line.append('a');
+        }
+        File inputFile = createInputFile(line + System.lineSeparator());
+
+        String[] args = {"--exit-codes", "-R", "(a+)+b", "x", inputFile.getPath()};
+        assertEquals("exit status does not match", 65, Main.run(args));
+        assertTrue("stderr output does not match", errStream.toString().startsWith("texttool: REGEX_TIMEOUT: "));
+
+        //A linear match of a far longer line still fits the cap
+        errStream.reset();
+        outStream.reset();
+        StringBuilder longer = new StringBuilder();
+        for(int i = 0; i < 2000000; i++){
+            longer.append(i % 100 == 0 ? 'b' : 'a');
+        }
+        File longFile = createInputFile(longer + System.lineSeparator());
+        String[] linear = {"--exit-codes", "-R", "a$", "x", longFile.getPath()};
+        assertEquals("exit status does not match", 0, Main.run(linear));
+        assertEquals("stdout output does not match", longer.substring(0, longer.length() - 1) + "x" +
+                System.lineSeparator(), outStream.toString());
+    }
+
+    // Frame #: 145
+    @Test(timeout = 60000)
+    public void texttoolTest145() throws Exception {
+        //An ordered -j run carries the rest of a buffer grown for a long line into the next, however long
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        int[] lengths = {2100000, 3000000, 10, 1500000};
+        for(int length : lengths){
+            StringBuilder line = new StringBuilder();
+            for(int i = 0; i < length; i++){
+                line.append(i % 50 == 49 ? ' ' : 'a');
+            }
+            input.append(line).append(System.lineSeparator());
+            expected.append('b').append(line, 1, line.length()).append(System.lineSeparator());
+        }
+        File inputFile = createInputFile(input.toString());
+
+        String[] args = {"-j", "2", "-R", "a", "b", inputFile.getPath()};
+        Main.main(args);
+
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("stdout output does not match", expected.toString(), outStream.toString());
+    }
+
+    // Frame #: 146
+    @Test(timeout = 60000)
+    public void texttoolTest146() throws Exception {
+        //An Error in an ordered -j worker fails the run instead of leaving the writer waiting for its chunk
+        StringBuilder input = new StringBuilder();
+        for(int i = 0; i < 200000; i++){
+            input.append(i == 150000 ? "boom" : "line " + i).append(System.lineSeparator());
+        }
+        File inputFile = createInputFile(input.toString());
+
+        ClassLoader original = withOperationPlugin(FailingOperation.class);
+        int status;
+        try {
+            String[] args = {"--exit-codes", "-j", "2", "--fail", inputFile.getPath()};
+            status = Main.run(args);
+        } finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+
+        assertEquals("exit status does not match", 74, status);
+        assertTrue("stderr output does not match", errStream.toString().startsWith("texttool: IO_ERROR: "));
+        assertFalse("the failing line should not be written", outStream.toString().contains("boom"));
+    }
+
+    // Frame #: 147
+    @Test(timeout = 60000)
+    public void texttoolTest147() throws Exception {
+        //An Error in one output's thread fails the run instead of leaving the reader waiting on its full queue
+        StringBuilder input = new StringBuilder();
+        for(int i = 0; i < 200000; i++){
+            input.append(i == 1000 ? "boom" : "line " + i).append(System.lineSeparator());
+        }
+        File inputFile = createInputFile(input.toString());
+        String first = inputFile.getParent() + "/first.txt";
+        String second = inputFile.getParent() + "/second.txt";
+        File jobFile = createInputFile("output " + first + System.lineSeparator() + "--fail" + System.lineSeparator() +
+                "output " + second + System.lineSeparator() + "prefix #" + System.lineSeparator());
+
+        ClassLoader original = withOperationPlugin(FailingOperation.class);
+        int status;
+        try {
+            String[] args = {"--exit-codes", "--job", jobFile.getPath(), inputFile.getPath()};
+            status = Main.run(args);
+        } finally {
+            Thread.currentThread().setContextClassLoader(original);
+        }
+
+        assertEquals("exit status does not match", 74, status);
+        assertTrue("stderr output does not match", errStream.toString().startsWith("texttool: IO_ERROR: "));
+        assertFalse("output should be deleted", Files.exists(Paths.get(first)));
+        assertFalse("output should be deleted", Files.exists(Paths.get(second)));
+    }
+
+    // Frame #: 148
+    @Test
+    public void texttoolTest148() throws Exception {
+        //A run that fails opening an output still closes its input, stopping the read-ahead thread
+        StringBuilder input = new StringBuilder();
+        for(int i = 0; i < 400000; i++){
+            input.append("line number ").append(i).append(System.lineSeparator());
+        }
+        File inputFile = createInputFile(input.toString());
+        String first = inputFile.getParent() + "/first.txt";
+        String second = inputFile.getParent() + "/missing/second.txt";
+        File jobFile = createInputFile("output " + first + System.lineSeparator() +
+                "output " + second + System.lineSeparator() + "prefix #" + System.lineSeparator());
+
+        int before = readAheadThreads();
+        for(int i = 0; i < 3; i++){
+            String[] args = {"--exit-codes", "--job", jobFile.getPath(), inputFile.getPath()};
+            assertTrue("run should fail", Main.run(args) != 0);
+            assertFalse("output should be deleted", Files.exists(Paths.get(first)));
+        }
+        assertEquals("read-ahead threads left running", before, readAheadThreads());
+    }
+
+    private static int readAheadThreads() {
+        int count = 0;
+        for(Thread thread : Thread.getAllStackTraces().keySet()){
+            if(thread.getName().equals("texttool-read-ahead") && thread.isAlive()){
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Frame #: 149
+    @Test
+    public void texttoolTest149() throws Exception {
+        //Only a missing input is INPUT_NOT_FOUND; an output that can't be created and a missing job file are not
+        File inputFile = createInputFile("abc" + System.lineSeparator());
+        String outFile = inputFile.getParent() + "/missing/out.txt";
+
+        String[] output = {"--exit-codes", "-p", "#", "-o", outFile, inputFile.getPath()};
+        assertEquals("exit status does not match", 73, Main.run(output));
+        assertTrue("stderr output does not match", errStream.toString().startsWith("texttool: OUTPUT_NOT_CREATED: " + outFile));
+
+        errStream.reset();
+        String[] parallel = {"--exit-codes", "-j", "2", "-p", "#", "-o", outFile, inputFile.getPath()};
+        assertEquals("exit status does not match", 73, Main.run(parallel));
+        assertTrue("stderr output does not match", errStream.toString().startsWith("texttool: OUTPUT_NOT_CREATED: " + outFile));
+
+        errStream.reset();
+        String jobFile = inputFile.getParent() + "/missing.job";
+        String[] job = {"--exit-codes", "--job", jobFile, inputFile.getPath()};
+        assertEquals("exit status does not match", 64, Main.run(job));
+        assertTrue("stderr output does not match", errStream.toString().startsWith("texttool: INVALID_VALUE: --job " + jobFile));
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+    }
+
+    // Frame #: 150
+    @Test
+    public void texttoolTest150() throws Exception {
+        //Filter tokens are regular expressions whether or not -R is given, and -i works without a replacement
+        String nl = System.lineSeparator();
+        File inputFile = createInputFile("axb" + nl + "a.b" + nl + "ab" + nl + "Error here" + nl);
+
+        String[] withReplace = {"--include", "a.b", "-r", "x", "y", inputFile.getPath()};
+        Main.main(withReplace);
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("stdout output does not match", "ayb" + nl + "a.b" + nl, outStream.toString());
+
+        outStream.reset();
+        String[] withRegex = {"--include", "a.b", "-R", "x", "y", inputFile.getPath()};
+        Main.main(withRegex);
+        assertEquals("stdout output does not match", "ayb" + nl + "a.b" + nl, outStream.toString());
+
+        outStream.reset();
+        String[] ignoreCase = {"-i", "--include", "error", inputFile.getPath()};
+        Main.main(ignoreCase);
+        assertTrue("stderr output should be empty", errStream.toString().isEmpty());
+        assertEquals("stdout output does not match", "Error here" + nl, outStream.toString());
+
+        outStream.reset();
+        String[] invalid = {"--exit-codes", "--exclude", "(", inputFile.getPath()};
+        assertEquals("exit status does not match", 64, Main.run(invalid));
+        assertTrue("stderr output does not match", errStream.toString().startsWith("texttool: INVALID_PATTERN: "));
+        assertTrue("stdout output should be empty", outStream.toString().isEmpty());
+    }
 }